@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.benchmark;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.talend.nexus.customizations.indexing.LicenseDictionary;
+
+// license fields of a page of hits stored as text vs dictionary ids, the index size of both modes is logged at setup
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LicenseDictionaryBenchmark {
+    private static final String[][] LICENSES = {
+            {"Apache License, Version 2.0", "https://www.apache.org/licenses/LICENSE-2.0.txt"},
+            {"The Apache Software License, Version 2.0", "http://www.apache.org/licenses/LICENSE-2.0.txt"},
+            {"Eclipse Public License - v 1.0", "http://www.eclipse.org/legal/epl-v10.html"},
+            {"GNU Lesser General Public License, Version 2.1", "http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html"},
+            {"MIT License", "http://www.opensource.org/licenses/mit-license.php"}
+    };
+
+    @Param({"10000"})
+    public int documents;
+
+    @Param({"text", "dictionary"})
+    public String mode;
+
+    @Param({"100"})
+    public int hits;
+
+    private RAMDirectory directory;
+    private IndexReader reader;
+    private LicenseDictionary dictionary;
+
+    @Setup
+    public void setup() throws IOException {
+        dictionary = new LicenseDictionary();
+        directory = new RAMDirectory();
+        final Set<String> persisted = new HashSet<>();
+        try (final IndexWriter writer = new IndexWriter(directory,
+                new IndexWriterConfig(Version.LUCENE_36, new StandardAnalyzer(Version.LUCENE_36)))) {
+            for (int i = 0; i < documents; i++) {
+                final String[] license = LICENSES[i % LICENSES.length];
+                final Document document = new Document();
+                document.add(new Field("u", "org.talend|artifact" + i + "|1.0|NA|jar", Field.Store.YES, Field.Index.NOT_ANALYZED));
+                document.add(new Field("license", license[0], Field.Store.YES, Field.Index.ANALYZED));
+                document.add(new Field("licenseUrl", license[1], Field.Store.YES, Field.Index.ANALYZED));
+                if ("dictionary".equals(mode)) {
+                    dictionary.encode(document, persisted, writer::addDocument);
+                }
+                writer.addDocument(document);
+            }
+            writer.forceMerge(1);
+        }
+        reader = IndexReader.open(directory);
+        System.out.println();
+        System.out.println("Index size (" + mode + "): " + directory.sizeInBytes() + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    @Benchmark
+    public void readHits(final Blackhole blackhole) throws IOException {
+        for (int i = 0; i < hits; i++) {
+            final Document document = reader.document(i * 37 % documents);
+            blackhole.consume(dictionary.decode(document, "license"));
+            blackhole.consume(dictionary.decode(document, "licenseUrl"));
+        }
+    }
+}
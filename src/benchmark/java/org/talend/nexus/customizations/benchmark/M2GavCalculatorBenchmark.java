@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.nexus.proxy.maven.gav.Gav;
+import org.sonatype.nexus.proxy.maven.gav.M2GavCalculator;
+import org.talend.nexus.customizations.core.GavPathBuilder;
+import org.talend.nexus.customizations.core.GavPathParser;
+
+// benchmarks run without the weaver so M2GavCalculator is the stock nexus implementation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class M2GavCalculatorBenchmark {
+    @Param({
+            "/org/talend/libraries/foo-bar/1.2.3/foo-bar-1.2.3.jar",
+            "/org/talend/components/foo/7.1.1-SNAPSHOT/foo-7.1.1-SNAPSHOT-sources.jar.sha1"
+    })
+    public String path;
+
+    private final M2GavCalculator calculator = new M2GavCalculator();
+
+    private Gav gav;
+
+    @Setup
+    public void setup() {
+        gav = calculator.pathToGav(path);
+        // pathToGav keeps the file name, reset it to measure the artifact name computation as well
+        gav = new Gav(gav.getGroupId(), gav.getArtifactId(), gav.getVersion(), gav.getClassifier(), gav.getExtension(),
+                gav.getSnapshotBuildNumber(), gav.getSnapshotTimeStamp(), null, gav.isHash(), gav.getHashType(),
+                gav.isSignature(), gav.getSignatureType());
+    }
+
+    @Benchmark
+    public Gav stockPathToGav() {
+        return calculator.pathToGav(path);
+    }
+
+    @Benchmark
+    public Gav fastPathToGav() {
+        return GavPathParser.parse(path);
+    }
+
+    @Benchmark
+    public String stockGavToPath() {
+        return calculator.gavToPath(gav);
+    }
+
+    @Benchmark
+    public String fastGavToPath() {
+        return GavPathBuilder.path(gav);
+    }
+}
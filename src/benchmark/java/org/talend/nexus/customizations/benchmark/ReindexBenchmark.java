@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.talend.nexus.customizations.indexing.ReindexMode;
+
+// full reindex of a synthetic repository (documents shaped like the artifact ones, Talend fields included),
+// docs/s and segment counts of each mode are logged after each iteration
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ReindexBenchmark {
+    private static final String[][] LICENSES = {
+            {"Apache License, Version 2.0", "https://www.apache.org/licenses/LICENSE-2.0.txt"},
+            {"Eclipse Public License - v 1.0", "http://www.eclipse.org/legal/epl-v10.html"},
+            {"MIT License", "http://www.opensource.org/licenses/mit-license.php"}
+    };
+
+    @Param({"100000"})
+    public int artifacts;
+
+    @Param({"default", "reindex"})
+    public String mode;
+
+    private File directory;
+    private long nanos;
+    private int[] segments;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("talend-reindex-benchmark").toFile();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        System.out.println();
+        System.out.println("Reindex (" + mode + "): " + (artifacts * TimeUnit.SECONDS.toNanos(1) / nanos) + " docs/s, "
+                + segments[0] + " segments, " + segments[1] + " after the merge");
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(directory.toPath());
+    }
+
+    @Benchmark
+    public void reindex() throws IOException {
+        final long start = System.nanoTime();
+        final IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_36, new StandardAnalyzer(Version.LUCENE_36));
+        if ("reindex".equals(mode)) {
+            config.setRAMBufferSizeMB(ReindexMode.RAM_BUFFER_MB);
+        }
+        try (final FSDirectory fs = FSDirectory.open(directory);
+             final IndexWriter writer = new IndexWriter(fs, config)) {
+            for (int i = 0; i < artifacts; i++) {
+                writer.addDocument(artifact(i));
+            }
+            segments = ReindexMode.merge(writer, "reindex".equals(mode) ? ReindexMode.MAX_SEGMENTS : 0);
+        }
+        nanos = System.nanoTime() - start;
+    }
+
+    private static Document artifact(final int index) {
+        final String groupId = "org.talend.group" + (index % 500);
+        final String artifactId = "artifact" + (index / 10);
+        final String version = "1." + (index % 10) + ".0";
+        final String[] license = LICENSES[index % LICENSES.length];
+        final Document document = new Document();
+        document.add(new Field("u", groupId + '|' + artifactId + '|' + version + "|NA|jar", Field.Store.YES, Field.Index.NOT_ANALYZED));
+        document.add(new Field("i", "jar|1560000000000|" + (1000 + index) + "|1|1|1|jar", Field.Store.YES, Field.Index.NO));
+        document.add(new Field("m", Long.toString(1560000000000L + index), Field.Store.YES, Field.Index.NO));
+        document.add(new Field("n", artifactId, Field.Store.YES, Field.Index.ANALYZED));
+        document.add(new Field("d", "Synthetic artifact " + index + " of " + groupId, Field.Store.YES, Field.Index.ANALYZED));
+        document.add(new Field("1", Integer.toHexString(index * 31) + "0123456789abcdef0123456789abcdef", Field.Store.YES, Field.Index.NOT_ANALYZED));
+        document.add(new Field("groupId", groupId, Field.Store.NO, Field.Index.ANALYZED));
+        document.add(new Field("artifactId", artifactId, Field.Store.NO, Field.Index.ANALYZED));
+        document.add(new Field("version", version, Field.Store.NO, Field.Index.ANALYZED));
+        document.add(new Field("license", license[0], Field.Store.YES, Field.Index.ANALYZED));
+        document.add(new Field("licenseUrl", license[1], Field.Store.YES, Field.Index.ANALYZED));
+        document.add(new Field("url", "https://github.com/Talend/" + artifactId, Field.Store.YES, Field.Index.ANALYZED));
+        return document;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.benchmark;
+
+import static java.util.Collections.singletonList;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.nexus.proxy.maven.maven2.Maven2ContentClass;
+import org.sonatype.nexus.proxy.registry.ContentClass;
+import org.sonatype.nexus.proxy.targets.Target;
+import org.talend.nexus.customizations.core.TargetIndex;
+import org.talend.nexus.customizations.core.TargetMatchingOptimizationAspect.FastTarget;
+
+// registry matching: all targets visited (DefaultTargetRegistry) vs only the compatible ones (TargetIndex)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TargetMatchingBenchmark {
+    @Param({"200"})
+    public int targetCount;
+
+    @Param({"maven2", "other"})
+    public String requestContentClass;
+
+    public String path = "/org/talend/components/foo/7.1.1/foo-7.1.1.jar";
+
+    private List<Target> targets;
+    private TargetIndex index;
+    private ContentClass contentClass;
+
+    @Setup
+    public void setup() {
+        final ContentClass maven2 = new Maven2ContentClass();
+        final ContentClass other = new OtherContentClass();
+        targets = new ArrayList<>(targetCount);
+        for (int i = 0; i < targetCount; i++) { // mainly maven2 targets like ours
+            targets.add(new FastTarget("t" + i, "t" + i, i % 10 == 0 ? other : maven2,
+                    singletonList(".*/org/talend/group" + i + "/.*")));
+        }
+        targets.add(new FastTarget("components", "components", maven2, singletonList(".*/org/talend/components/.*")));
+        index = new TargetIndex(targets);
+        contentClass = "maven2".equals(requestContentClass) ? maven2 : other;
+    }
+
+    @Benchmark
+    public Set<Target> allTargets() {
+        final Set<Target> result = new HashSet<>();
+        for (final Target target : targets) {
+            if (target.isPathContained(contentClass, path)) {
+                result.add(target);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Set<Target> indexedTargets() {
+        return index.getTargetsForContentClassPath(contentClass, path);
+    }
+
+    private static class OtherContentClass extends Maven2ContentClass {
+        @Override
+        public String getId() {
+            return "other";
+        }
+
+        @Override
+        public boolean isCompatible(final ContentClass contentClass) {
+            return getId().equals(contentClass.getId());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.aspectj.weaver.loadtime.WeavingURLClassLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// startup share of the weaving: defines every class of the jars the woven profile weaves,
+// with the load time weaver (plugin aop.xml) or from the build time woven jars (target/woven, run mvn -Pwoven package first),
+// each invocation uses a new classloader like a Nexus start
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WeavingStartupBenchmark {
+    @Param({"loadtime", "buildtime"})
+    public String mode;
+
+    private URL[] classpath;
+    private URL[] aspects;
+    private List<String> classes;
+
+    @Setup
+    public void setup() throws IOException {
+        final File woven = new File(System.getProperty("benchmark.woven", "target/woven"));
+        final File[] wovenJars = woven.listFiles((dir, name) -> name.endsWith(".jar"));
+        if (wovenJars == null || wovenJars.length == 0) {
+            throw new IllegalStateException("No woven jar in " + woven.getAbsolutePath() + ", run mvn -Pwoven package first");
+        }
+        final Map<String, File> replacements = new HashMap<>();
+        for (final File jar : wovenJars) {
+            replacements.put(jar.getName(), jar);
+        }
+
+        final List<URL> urls = new ArrayList<>();
+        final Collection<File> original = new ArrayList<>();
+        for (final String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            final File file = new File(entry);
+            final File replacement = replacements.get(file.getName());
+            if (replacement != null) {
+                original.add(file);
+            }
+            urls.add(toUrl("buildtime".equals(mode) && replacement != null ? replacement : file));
+            if (file.isDirectory() && new File(file, "META-INF/aop.xml").isFile()) {
+                aspects = new URL[] { toUrl(file) };
+            }
+        }
+        if (original.size() != replacements.size()) {
+            throw new IllegalStateException("Some woven jars are not in the benchmark classpath: " + replacements.keySet());
+        }
+        if (aspects == null) {
+            throw new IllegalStateException("No META-INF/aop.xml in the classpath");
+        }
+        classpath = urls.toArray(new URL[0]);
+
+        classes = new ArrayList<>();
+        for (final File jar : original) {
+            try (final JarFile file = new JarFile(jar)) {
+                final Enumeration<JarEntry> entries = file.entries();
+                while (entries.hasMoreElements()) {
+                    final String name = entries.nextElement().getName();
+                    if (name.endsWith(".class") && !name.endsWith("module-info.class") && !name.endsWith("package-info.class")) {
+                        classes.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int defineClasses() throws IOException {
+        // parent is the bootstrap loader, nothing leaks from the benchmark classpath
+        try (final URLClassLoader loader = "loadtime".equals(mode) ?
+                new WeavingURLClassLoader(classpath, aspects, null) : new URLClassLoader(classpath, null)) {
+            int defined = 0;
+            for (final String name : classes) {
+                try {
+                    Class.forName(name, false, loader);
+                    defined++;
+                } catch (final ClassNotFoundException | LinkageError e) {
+                    // optional dependency missing, same for both modes
+                }
+            }
+            return defined;
+        }
+    }
+
+    private static URL toUrl(final File file) {
+        try {
+            return file.toURI().toURL();
+        } catch (final MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.loadtest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Runs {@link LoadTestWorker} in one forked JVM per variant of the weaving configuration
+ * (all the aspects, no weaver at all, all the aspects but one) and prints the throughput
+ * and latency percentiles of each traffic type side by side.
+ */
+public final class LoadTest {
+    static final String RESULT_PREFIX = "RESULT ";
+
+    private static final Pattern ASPECT = Pattern.compile("\\s*<aspect name=\"([^\"]+)\"/>\\s*\\n");
+
+    // it initializes what the other aspects use (LoadedByReflection): all the aspects but it can't run
+    private static final String REQUIRED_ASPECT = "org.talend.nexus.customizations.indexing.MinimalArtifactInfoIndexCreatorAspect";
+
+    private LoadTest() {
+        // no-op
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final File output = new File(System.getProperty("loadtest.output", "target/loadtest"));
+        if (!output.isDirectory() && !output.mkdirs()) {
+            throw new IllegalStateException("Can't create " + output);
+        }
+        final String aopXml = read("META-INF/aop.xml");
+        final Map<String, String> variants = variants(aopXml, System.getProperty("loadtest.variants", ""));
+
+        final Map<String, List<String>> results = new LinkedHashMap<>();
+        for (final Map.Entry<String, String> variant : variants.entrySet()) {
+            System.out.println("[loadtest] Running variant '" + variant.getKey() + "'");
+            results.put(variant.getKey(), fork(output, variant.getKey(), variant.getValue()));
+        }
+
+        System.out.println();
+        System.out.println(String.format("%-45s %-8s %12s %10s %10s %10s %10s %10s %8s",
+                "variant", "traffic", "ops", "ops/s", "p50 (us)", "p90 (us)", "p99 (us)", "p99.9 (us)", "MB/s"));
+        results.forEach((variant, lines) -> lines.forEach(line -> {
+            final String[] values = line.substring(RESULT_PREFIX.length()).split(" ");
+            System.out.println(String.format("%-45s %-8s %12s %10s %10s %10s %10s %10s %8s",
+                    variant, values[0], values[1], values[2], values[3], values[4], values[5], values[6], values[7]));
+        }));
+    }
+
+    // variant name -> aop.xml content, null for the run without weaver
+    private static Map<String, String> variants(final String aopXml, final String selection) {
+        final String woven = aopXml
+                .replace("-showWeaveInfo", "")
+                .replace("</weaver>", "  <include within=\"org.talend.nexus.customizations.loadtest..*\"/> <!-- targets of the worker -->\n  </weaver>");
+        final List<String> aspects = new ArrayList<>();
+        final Matcher matcher = ASPECT.matcher(woven);
+        while (matcher.find()) {
+            aspects.add(matcher.group(1));
+        }
+
+        final Map<String, String> all = new LinkedHashMap<>();
+        all.put("all", woven);
+        all.put("none", null);
+        for (final String aspect : aspects) {
+            if (REQUIRED_ASPECT.equals(aspect)) {
+                continue;
+            }
+            all.put("-" + aspect.substring(aspect.lastIndexOf('.') + 1),
+                    woven.replaceFirst("\\s*<aspect name=\"" + Pattern.quote(aspect) + "\"/>", ""));
+        }
+        if (selection.trim().isEmpty()) {
+            return all;
+        }
+        final Map<String, String> selected = new LinkedHashMap<>();
+        for (final String name : Stream.of(selection.split(",")).map(String::trim).filter(it -> !it.isEmpty()).collect(toList())) {
+            if (!all.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown variant '" + name + "', available: " + all.keySet());
+            }
+            selected.put(name, all.get(name));
+        }
+        return selected;
+    }
+
+    private static List<String> fork(final File output, final String name, final String aopXml) throws Exception {
+        final String fileName = name.replace('-', '_');
+        final List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+        command.addAll(split(System.getProperty("loadtest.jvm", "")));
+        if (aopXml != null) {
+            final File configuration = new File(output, "aop-" + fileName + ".xml");
+            Files.write(configuration.toPath(), aopXml.getBytes(UTF_8));
+            command.add("-javaagent:" + System.getProperty("loadtest.weaver"));
+            command.add("-Dorg.aspectj.weaver.loadtime.configuration=" + configuration.toURI());
+        }
+        Stream.of("threads", "downloadThreads", "warmup", "duration", "artifacts", "jarSize", "mix")
+              .filter(it -> System.getProperty("loadtest." + it) != null)
+              .forEach(it -> command.add("-Dloadtest." + it + "=" + System.getProperty("loadtest." + it)));
+        command.add("-Dloadtest.repository=" + new File(output, "repository-" + fileName).getAbsolutePath());
+        command.add("-Dloadtest.multipleArtifactIds=" + (aopXml != null && aopXml.contains("DefaultIndexerManagerAspect\"")));
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LoadTestWorker.class.getName());
+
+        final File log = new File(output, "worker-" + fileName + ".log");
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final List<String> results = new ArrayList<>();
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8))) {
+            final List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    results.add(line);
+                } else {
+                    lines.add(line);
+                }
+            }
+            Files.write(log.toPath(), lines, UTF_8);
+        }
+        final int exitCode = process.waitFor();
+        if (exitCode != 0 || results.isEmpty()) {
+            throw new IllegalStateException("Variant '" + name + "' failed (exit code " + exitCode + "), see " + log);
+        }
+        return results;
+    }
+
+    private static Collection<String> split(final String options) {
+        return Stream.of(options.trim().split(" +")).filter(it -> !it.isEmpty()).collect(toList());
+    }
+
+    // the test classes have their own aop.xml, the plugin one is the one declaring the aspects
+    private static String read(final String resource) throws IOException {
+        final Enumeration<URL> urls = Thread.currentThread().getContextClassLoader().getResources(resource);
+        while (urls.hasMoreElements()) {
+            try (final InputStream stream = urls.nextElement().openStream()) {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, UTF_8));
+                final StringBuilder content = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    content.append(line).append('\n');
+                }
+                if (content.indexOf("<aspects>") >= 0) {
+                    return content.toString();
+                }
+            }
+        }
+        throw new IllegalStateException("No " + resource + " declaring aspects in the classpath");
+    }
+}
@@ -0,0 +1,526 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.loadtest;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import org.apache.maven.index.DefaultNexusIndexer;
+import org.apache.maven.index.DefaultQueryCreator;
+import org.apache.maven.index.DefaultSearchEngine;
+import org.apache.maven.index.context.DefaultIndexingContext;
+import org.apache.maven.index.context.IndexingContext;
+import org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.eclipse.sisu.inject.DefaultBeanLocator;
+import org.restlet.data.Method;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.sonatype.nexus.configuration.application.ApplicationConfiguration;
+import org.sonatype.nexus.configuration.application.runtime.DefaultApplicationRuntimeConfigurationBuilder;
+import org.sonatype.nexus.configuration.validator.ApplicationConfigurationValidator;
+import org.sonatype.nexus.index.DefaultIndexerManager;
+import org.sonatype.nexus.index.GavSearcher;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.access.Action;
+import org.sonatype.nexus.proxy.access.NexusItemAuthorizer;
+import org.sonatype.nexus.proxy.maven.MavenRepository;
+import org.sonatype.nexus.proxy.maven.gav.Gav;
+import org.sonatype.nexus.proxy.maven.gav.M2GavCalculator;
+import org.sonatype.nexus.proxy.maven.maven2.M2Repository;
+import org.sonatype.nexus.proxy.maven.maven2.M2RepositoryConfigurator;
+import org.sonatype.nexus.proxy.maven.maven2.Maven2ContentClass;
+import org.sonatype.nexus.proxy.registry.ContentClass;
+import org.sonatype.nexus.proxy.registry.DefaultRepositoryRegistry;
+import org.sonatype.nexus.proxy.registry.DefaultRepositoryTypeRegistry;
+import org.sonatype.nexus.proxy.repository.DefaultRepositoryKind;
+import org.sonatype.nexus.proxy.repository.LocalStatus;
+import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.proxy.repository.RepositoryKind;
+import org.sonatype.nexus.proxy.targets.DefaultTargetRegistry;
+import org.sonatype.nexus.proxy.targets.Target;
+import org.sonatype.nexus.proxy.targets.TargetSet;
+import org.sonatype.nexus.rest.indexng.SearchNGIndexPlexusResource;
+import org.sonatype.nexus.rest.model.SearchNGResponse;
+import org.sonatype.sisu.goodies.eventbus.internal.DefaultEventBus;
+import org.sonatype.sisu.goodies.eventbus.internal.ReentrantGuavaEventBus;
+import org.talend.nexus.customizations.loadtest.SyntheticRepository.Artifact;
+import org.talend.nexus.customizations.monitoring.LatencyHistogram;
+
+/**
+ * Forked by {@link LoadTest}: assembles the indexer manager on an indexing context of a synthetic repository,
+ * the stock SearchNG resource, the target registry, the item authorizer and the gav calculator - woven or not
+ * depending on the JVM options - then drives a search and target check storm from many threads while
+ * dedicated threads download artifacts (path resolution, authorization and content read).
+ * Prints one {@link LoadTest#RESULT_PREFIX} line per traffic type: name, calls, calls/s, p50/p90/p99/p99.9 in microseconds
+ * and MB/s for the downloads ({@code -} for the other traffic types).
+ */
+public final class LoadTestWorker {
+    private static final String REPOSITORY_ID = "libraries";
+    private static final String DOWNLOAD = "download";
+
+    private final List<Artifact> artifacts;
+    private final File content;
+    private final SearchNGIndexPlexusResource resource;
+    private final boolean multipleArtifactIds;
+    private final M2GavCalculator calculator = new M2GavCalculator();
+    private final Nexus nexus;
+    private final Subject user;
+    private final LongAdder downloadedBytes = new LongAdder();
+
+    private LoadTestWorker(final SyntheticRepository repository, final Nexus nexus, final boolean multipleArtifactIds) {
+        this.artifacts = repository.getArtifacts();
+        this.content = repository.getRoot();
+        this.nexus = nexus;
+        this.resource = newResource(nexus);
+        this.multipleArtifactIds = multipleArtifactIds;
+        this.user = permissive(Subject.class);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int threads = Integer.getInteger("loadtest.threads", 16);
+        final int downloadThreads = Integer.getInteger("loadtest.downloadThreads", 4);
+        final int warmup = Integer.getInteger("loadtest.warmup", 20);
+        final int duration = Integer.getInteger("loadtest.duration", 60);
+        final Map<String, Integer> mix = mix(System.getProperty("loadtest.mix", "search=80,target=20"));
+
+        final File root = new File(System.getProperty("loadtest.repository", "target/loadtest/repository"));
+        final SyntheticRepository repository = new SyntheticRepository(
+                new File(root, "content"), Integer.getInteger("loadtest.artifacts", 20000), Integer.getInteger("loadtest.jarSize", 65536));
+        final long generationStart = System.nanoTime();
+        repository.generate();
+        final IndexingContext context = new DefaultIndexingContext(
+                REPOSITORY_ID + "-ctx", REPOSITORY_ID, repository.getRoot(), new File(root, "index"),
+                null, null, singletonList(new MinimalArtifactInfoIndexCreator()), true);
+        repository.index(context);
+        System.out.println("Repository of " + repository.getArtifacts().size() + " artifacts ready in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - generationStart) + "ms");
+
+        // a, comma separated artifactIds, is a DefaultIndexerManagerAspect feature: the stock indexer finds nothing
+        final LoadTestWorker worker = new LoadTestWorker(repository, new Nexus(context, repository),
+                Boolean.getBoolean("loadtest.multipleArtifactIds"));
+        try {
+            worker.run(threads, mix, downloadThreads, warmup, duration);
+        } finally {
+            context.close(true);
+            delete(root);
+        }
+        System.exit(0); // aspects can own non daemon threads
+    }
+
+    private void run(final int threads, final Map<String, Integer> mix, final int downloadThreads,
+                     final int warmup, final int duration) throws Exception {
+        final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+        mix.keySet().forEach(it -> histograms.put(it, new LatencyHistogram()));
+        if (downloadThreads > 0) {
+            histograms.putIfAbsent(DOWNLOAD, new LatencyHistogram());
+        }
+        final String[] weighted = mix.entrySet().stream()
+                .flatMap(it -> Stream.generate(it::getKey).limit(it.getValue()))
+                .toArray(String[]::new);
+        final String[] downloads = { DOWNLOAD };
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(threads + downloadThreads);
+        final ExecutorService pool = Executors.newFixedThreadPool(threads + downloadThreads);
+        try {
+            for (int i = 0; i < threads + downloadThreads; i++) {
+                final String[] traffics = i < threads ? weighted : downloads; // downloads run alongside the storm
+                pool.execute(() -> {
+                    ThreadContext.bind(user); // authorization decisions are per user
+                    try {
+                        final ThreadLocalRandom random = ThreadLocalRandom.current();
+                        while (running.get()) {
+                            final String traffic = traffics[random.nextInt(traffics.length)];
+                            final Artifact artifact = artifacts.get(random.nextInt(artifacts.size()));
+                            final LatencyHistogram.Recorder recorder = histograms.get(traffic).recorder();
+                            recorder.count(1);
+                            final long start = System.nanoTime();
+                            execute(traffic, artifact, random);
+                            recorder.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                        }
+                    } catch (final Throwable t) {
+                        error.compareAndSet(null, t);
+                    } finally {
+                        ThreadContext.unbindSubject();
+                        done.countDown();
+                    }
+                });
+            }
+            TimeUnit.SECONDS.sleep(warmup);
+            histograms.values().forEach(LatencyHistogram::reset);
+            downloadedBytes.reset();
+            final long start = System.nanoTime();
+            TimeUnit.SECONDS.sleep(duration);
+            final Map<String, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<>();
+            histograms.forEach((name, histogram) -> snapshots.put(name, histogram.snapshot()));
+            final long bytes = downloadedBytes.sum();
+            final double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+            running.set(false);
+            done.await(1, TimeUnit.MINUTES);
+
+            if (error.get() != null) {
+                throw new IllegalStateException(error.get());
+            }
+            snapshots.forEach((name, snapshot) -> System.out.println(LoadTest.RESULT_PREFIX + name
+                    + ' ' + snapshot.getSamples()
+                    + ' ' + Math.round(snapshot.getSamples() / seconds)
+                    + ' ' + snapshot.percentile(0.5)
+                    + ' ' + snapshot.percentile(0.9)
+                    + ' ' + snapshot.percentile(0.99)
+                    + ' ' + snapshot.percentile(0.999)
+                    + ' ' + (DOWNLOAD.equals(name) ? String.format(Locale.ROOT, "%.1f", bytes / seconds / (1024 * 1024)) : "-")));
+        } finally {
+            running.set(false);
+            pool.shutdownNow();
+        }
+    }
+
+    private void execute(final String traffic, final Artifact artifact, final ThreadLocalRandom random) throws Exception {
+        switch (traffic) {
+            case "search":
+                search(artifact, random);
+                break;
+            case DOWNLOAD:
+                download(artifact);
+                break;
+            case "target":
+                target(artifact);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown traffic '" + traffic + "', use search, download or target");
+        }
+    }
+
+    // the studio queries: one GA, an exact GAV or several artifacts of a group at once
+    private void search(final Artifact artifact, final ThreadLocalRandom random) throws Exception {
+        final String artifactIds;
+        final String version;
+        switch (random.nextInt(multipleArtifactIds ? 3 : 2)) {
+            case 0:
+                artifactIds = artifact.artifactId;
+                version = null;
+                break;
+            case 1:
+                artifactIds = artifact.artifactId;
+                version = artifact.version;
+                break;
+            default:
+                artifactIds = artifact.artifactId + ',' + artifacts.get(random.nextInt(artifacts.size())).artifactId;
+                version = null;
+        }
+        final Request request = new Request(Method.GET, "http://localhost/service/local/lucene/search?repositoryId=" + REPOSITORY_ID
+                + "&g=" + artifact.groupId + "&a=" + artifactIds + (version == null ? "" : "&v=" + version));
+        final Object payload = resource.get(null, request, new Response(request), null);
+        if (!SearchNGResponse.class.isInstance(payload) || SearchNGResponse.class.cast(payload).getData().isEmpty()) {
+            throw new IllegalStateException("No hit for " + artifact.groupId + ':' + artifactIds + ':' + version);
+        }
+    }
+
+    // the stock resource: gav searcher, latest version collectors, response packing and the enrichment of the aspects,
+    // hits go through the artifact filter (authorization) of the manager; only the restlet serialization is not there
+    private SearchNGIndexPlexusResource newResource(final Nexus nexus) {
+        final SearchNGIndexPlexusResource searchNG = new SearchNGIndexPlexusResource(singletonList(new GavSearcher(nexus.manager)));
+        searchNG.setDefaultRepositoryRegistry(nexus.repositoryRegistry);
+        return searchNG;
+    }
+
+    // what a GET on the repository does around the storage: gav of the path, read authorization
+    // (targets of the path then permissions) and the content
+    private void download(final Artifact artifact) throws IOException {
+        final Gav gav = calculator.pathToGav(artifact.path);
+        if (gav == null || !artifact.path.equals(calculator.gavToPath(gav))) {
+            throw new IllegalStateException("Invalid gav for " + artifact.path + ": " + gav);
+        }
+        if (!nexus.authorizer.authorizePath(nexus.repository, new ResourceStoreRequest(artifact.path), Action.read)) {
+            throw new IllegalStateException("Can't read " + artifact.path);
+        }
+        final byte[] buffer = new byte[8192];
+        long read = 0;
+        try (final InputStream stream = new FileInputStream(new File(content, artifact.path.substring(1)))) {
+            int count;
+            while ((count = stream.read(buffer)) >= 0) {
+                read += count;
+            }
+        }
+        downloadedBytes.add(read);
+    }
+
+    // what the authorization of each request asks the target registry
+    private void target(final Artifact artifact) {
+        final TargetSet matches = nexus.targetRegistry.getTargetsForRepositoryPath(nexus.repository, artifact.path);
+        if (matches.getMatches().size() < 2) { // all and jars at least
+            throw new IllegalStateException("Missing targets for " + artifact.path);
+        }
+    }
+
+    private static Map<String, Integer> mix(final String value) {
+        final Map<String, Integer> mix = new LinkedHashMap<>();
+        for (final String entry : value.split(",")) {
+            final String[] parts = entry.trim().split("=");
+            final int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                mix.put(parts[0].trim(), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("No traffic in '" + value + "'");
+        }
+        return mix;
+    }
+
+    // interfaces the assembled components need but the load test does not exercise: everything is permitted,
+    // nothing is stored (security system, configuration, current user)
+    private static <T> T permissive(final Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(LoadTestWorker.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            final Class<?> returned = method.getReturnType();
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "permissive " + type.getSimpleName();
+                case "getPrincipal":
+                    return "loadtest";
+                default:
+            }
+            if (returned == boolean.class) {
+                return true;
+            }
+            if (returned == boolean[].class) { // isPermitted(List) and friends
+                final boolean[] permitted = new boolean[args == null ? 0 : Stream.of(args)
+                        .filter(Collection.class::isInstance).mapToInt(it -> Collection.class.cast(it).size()).findFirst().orElse(0)];
+                Arrays.fill(permitted, true);
+                return permitted;
+            }
+            if (returned == int.class || returned == long.class) {
+                return returned == int.class ? (Object) 0 : (Object) 0L;
+            }
+            if (Set.class.isAssignableFrom(returned)) {
+                return emptySet();
+            }
+            if (Collection.class.isAssignableFrom(returned)) {
+                return emptyList();
+            }
+            if (Map.class.isAssignableFrom(returned)) {
+                return emptyMap();
+            }
+            if (returned.isInterface() && returned.getName().startsWith("org.apache.shiro.")) { // getSubject()
+                return permissive(returned);
+            }
+            return null;
+        }));
+    }
+
+    // plexus (fields) or JSR330 (constructor) injection, whatever the nexus version uses: the known instances
+    // by type and permissive proxies for the other nexus and security interfaces
+    private static Object component(final String className, final Object... known) throws Exception {
+        final Class<?> type = Class.forName(className);
+        final Constructor<?> constructor = Stream.of(type.getConstructors())
+                .max(Comparator.comparingInt(Constructor::getParameterCount))
+                .orElseThrow(() -> new IllegalStateException("No public constructor for " + className));
+        final Object[] parameters = new Object[constructor.getParameterCount()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = dependency(constructor.getParameterTypes()[i], known);
+        }
+        final Object component = constructor.newInstance(parameters);
+        for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+            for (final Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers()) || field.getType().isPrimitive()) {
+                    continue;
+                }
+                field.setAccessible(true);
+                if (field.get(component) == null) {
+                    field.set(component, dependency(field.getType(), known));
+                }
+            }
+        }
+        return component;
+    }
+
+    private static Object dependency(final Class<?> type, final Object[] known) {
+        for (final Object candidate : known) {
+            if (type.isInstance(candidate)) {
+                return candidate;
+            }
+        }
+        final boolean permitted = type.isInterface()
+                && (type.getName().startsWith("org.sonatype.") || type.getName().startsWith("org.apache.shiro."));
+        return permitted ? permissive(type) : null;
+    }
+
+    private static void set(final Object on, final String field, final Object value)
+            throws IllegalAccessException {
+        Class<?> current = on.getClass();
+        while (current != Object.class) {
+            try {
+                final Field declaredField = current.getDeclaredField(field);
+                declaredField.setAccessible(true);
+                declaredField.set(on, value);
+                return;
+            } catch (final NoSuchFieldException nsfe) {
+                current = current.getSuperclass();
+            }
+        }
+        throw new IllegalStateException("Didn't find " + field + " in " + on);
+    }
+
+    // the nexus components on the download and search paths, wired like in the server
+    private static final class Nexus {
+        private final DefaultRepositoryRegistry repositoryRegistry;
+        private final DefaultTargetRegistry targetRegistry;
+        private final M2Repository repository;
+        private final NexusItemAuthorizer authorizer;
+        private final DefaultIndexerManager manager;
+
+        private Nexus(final IndexingContext context, final SyntheticRepository synthetic) throws Exception {
+            final DefaultEventBus eventBus = new DefaultEventBus(new ReentrantGuavaEventBus());
+            final Maven2ContentClass maven2ContentClass = new Maven2ContentClass();
+            final DefaultRepositoryTypeRegistry repositoryTypeRegistry = new DefaultRepositoryTypeRegistry(
+                    singletonMap("maven", maven2ContentClass), new DefaultApplicationRuntimeConfigurationBuilder(new DefaultBeanLocator()));
+            repositoryRegistry = new DefaultRepositoryRegistry(eventBus, repositoryTypeRegistry);
+
+            // the stock registry keeps the Target instances of its configuration, here the synthetic targets
+            final List<Target> configured = synthetic.targets(maven2ContentClass, 200);
+            targetRegistry = new DefaultTargetRegistry(eventBus, permissive(ApplicationConfiguration.class), repositoryTypeRegistry,
+                    permissive(ApplicationConfigurationValidator.class)) {
+                @Override
+                public Collection<Target> getRepositoryTargets() {
+                    return Collections.unmodifiableCollection(configured);
+                }
+            };
+
+            repository = new M2Repository(maven2ContentClass, new M2GavCalculator(), new M2RepositoryConfigurator()) {
+                @Override
+                public String getProviderRole() {
+                    return "org.sonatype.nexus.proxy.repository.Repository";
+                }
+
+                @Override
+                public String getProviderHint() {
+                    return "maven2";
+                }
+
+                @Override
+                public String getId() {
+                    return REPOSITORY_ID;
+                }
+
+                @Override
+                public String getName() {
+                    return "Libraries";
+                }
+
+                @Override
+                public RepositoryKind getRepositoryKind() {
+                    return new DefaultRepositoryKind(Repository.class, singletonList(MavenRepository.class));
+                }
+
+                @Override
+                public ContentClass getRepositoryContentClass() {
+                    return maven2ContentClass;
+                }
+
+                @Override
+                public LocalStatus getLocalStatus() {
+                    return LocalStatus.IN_SERVICE;
+                }
+
+                @Override
+                public boolean isIndexable() {
+                    return true;
+                }
+
+                @Override
+                public boolean isSearchable() {
+                    return true;
+                }
+
+                @Override // what AbstractRepository asks its injected target registry
+                public TargetSet getTargetsForRequest(final ResourceStoreRequest request) {
+                    return targetRegistry.getTargetsForRepositoryPath(this, request.getRequestPath());
+                }
+            };
+            repositoryRegistry.addRepository(repository);
+
+            authorizer = NexusItemAuthorizer.class.cast(component("org.sonatype.nexus.proxy.access.DefaultNexusItemAuthorizer",
+                    targetRegistry, repositoryRegistry, new ConsoleLogger()));
+
+            manager = new DefaultIndexerManager();
+            final DefaultNexusIndexer indexer = new DefaultNexusIndexer();
+            final DefaultQueryCreator queryCreator = new DefaultQueryCreator();
+            set(queryCreator, "logger", new ConsoleLogger());
+            set(indexer, "queryCreator", queryCreator);
+            set(indexer, "searcher", new DefaultSearchEngine());
+            indexer.addIndexingContext(context);
+            set(manager, "mavenIndexer", indexer);
+            set(manager, "maven2", maven2ContentClass);
+            set(manager, "repositoryRegistry", repositoryRegistry);
+            // each search hit is authorized like a download (DefaultIndexerManager.createRequest)
+            set(manager, "indexArtifactFilter", component("org.sonatype.nexus.index.DefaultIndexArtifactFilter",
+                    authorizer, repositoryRegistry, new ConsoleLogger()));
+        }
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (final IOException e) {
+            System.err.println("Can't delete " + file + ": " + e.getMessage());
+        }
+    }
+}
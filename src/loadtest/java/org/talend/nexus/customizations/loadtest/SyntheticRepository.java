@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.loadtest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.index.ArtifactContext;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.artifact.Gav;
+import org.apache.maven.index.context.IndexingContext;
+import org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator;
+import org.sonatype.nexus.proxy.registry.ContentClass;
+import org.sonatype.nexus.proxy.targets.Target;
+
+/**
+ * A maven 2 layout with five versions of each artifact, each version having a POM with a license and a jar,
+ * spread over a few hundred groups like a Talend libraries repository.
+ */
+class SyntheticRepository {
+    private static final String[][] LICENSES = {
+            {"Apache License, Version 2.0", "https://www.apache.org/licenses/LICENSE-2.0.txt"},
+            {"The Apache Software License, Version 2.0", "http://www.apache.org/licenses/LICENSE-2.0.txt"},
+            {"Eclipse Public License - v 1.0", "http://www.eclipse.org/legal/epl-v10.html"},
+            {"GNU Lesser General Public License, Version 2.1", "http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html"},
+            {"MIT License", "http://www.opensource.org/licenses/mit-license.php"}
+    };
+    private static final int VERSIONS = 5;
+    private static final int ARTIFACTS_PER_GROUP = 20;
+
+    private final File root;
+    private final int jarSize;
+    private final List<Artifact> artifacts = new ArrayList<>();
+
+    SyntheticRepository(final File root, final int count, final int jarSize) {
+        this.root = root;
+        this.jarSize = jarSize;
+        for (int i = 0; i < count; i++) {
+            final int ga = i / VERSIONS;
+            artifacts.add(new Artifact(
+                    "org.talend.loadtest.g" + (ga / ARTIFACTS_PER_GROUP), "artifact-" + ga, "1." + (i % VERSIONS) + ".0",
+                    LICENSES[ga % LICENSES.length]));
+        }
+    }
+
+    File getRoot() {
+        return root;
+    }
+
+    List<Artifact> getArtifacts() {
+        return artifacts;
+    }
+
+    void generate() throws IOException {
+        final byte[] jar = new byte[jarSize];
+        for (final Artifact artifact : artifacts) {
+            final File pom = artifact.file(root, "pom");
+            final File parent = pom.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IllegalStateException("Can't create " + parent);
+            }
+            Files.write(pom.toPath(), artifact.pom().getBytes(UTF_8));
+            Files.write(artifact.file(root, "jar").toPath(), jar);
+        }
+    }
+
+    void index(final IndexingContext context) throws IOException {
+        final MinimalArtifactInfoIndexCreator creator = new MinimalArtifactInfoIndexCreator();
+        for (final Artifact artifact : artifacts) {
+            final ArtifactContext artifactContext = new ArtifactContext(
+                    artifact.file(root, "pom"), artifact.file(root, "jar"), null,
+                    new ArtifactInfo(context.getRepositoryId(), artifact.groupId, artifact.artifactId, artifact.version, null),
+                    new Gav(artifact.groupId, artifact.artifactId, artifact.version));
+            creator.populateArtifactInfo(artifactContext);
+            context.getIndexWriter().addDocument(artifactContext.createDocument(context));
+        }
+        context.commit();
+        context.rebuildGroups();
+    }
+
+    // the kind of targets privileges are built on: per group, per extension and a few catch-all ones
+    List<Target> targets(final ContentClass contentClass, final int count) {
+        final List<Target> targets = new ArrayList<>(count);
+        targets.add(new Target("all", "All", contentClass, singletonList(".*")));
+        targets.add(new Target("jars", "Jars", contentClass, singletonList(".*\\.jar")));
+        targets.add(new Target("poms", "Poms", contentClass, singletonList(".*\\.pom")));
+        targets.add(new Target("metadata", "Metadata", contentClass, singletonList(".*maven-metadata\\.xml.*")));
+        for (int i = targets.size(); i < count; i++) {
+            targets.add(new Target("group-" + i, "Group " + i, contentClass, singletonList("/org/talend/loadtest/g" + i + "/.*")));
+        }
+        return targets;
+    }
+
+    static final class Artifact {
+        final String groupId;
+        final String artifactId;
+        final String version;
+        final String path; // of the jar
+        private final String[] license;
+
+        private Artifact(final String groupId, final String artifactId, final String version, final String[] license) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.license = license;
+            this.path = '/' + groupId.replace('.', '/') + '/' + artifactId + '/' + version + '/' + artifactId + '-' + version + ".jar";
+        }
+
+        private File file(final File root, final String extension) {
+            return new File(root, path.substring(1, path.length() - "jar".length()) + extension);
+        }
+
+        private String pom() {
+            return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n" +
+                    "  <modelVersion>4.0.0</modelVersion>\n" +
+                    "  <groupId>" + groupId + "</groupId>\n" +
+                    "  <artifactId>" + artifactId + "</artifactId>\n" +
+                    "  <version>" + version + "</version>\n" +
+                    "  <name>" + artifactId + "</name>\n" +
+                    "  <url>https://github.com/Talend/" + artifactId + "</url>\n" +
+                    "  <licenses>\n" +
+                    "    <license>\n" +
+                    "      <name>" + license[0] + "</name>\n" +
+                    "      <url>" + license[1] + "</url>\n" +
+                    "    </license>\n" +
+                    "  </licenses>\n" +
+                    "</project>\n";
+        }
+    }
+}
@@ -15,16 +15,22 @@
  */
 package org.talend.nexus.customizations;
 
+import static java.util.Collections.unmodifiableMap;
 import static java.util.Objects.requireNonNull;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.felix.framework.cache.Content;
 import org.apache.felix.framework.cache.DirectoryContent;
@@ -33,50 +39,101 @@ import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
 import org.eclipse.jetty.webapp.WebAppClassLoader;
 import org.osgi.framework.Bundle;
+import org.talend.nexus.customizations.monitoring.WeavingReport;
 
 @Aspect
 public class ClassLoaderSetupAspect {
+    // added to the aspectj bundle which misses them to be resolvable by felix
+    private static final Map<String, String> ASPECTJ_HEADERS;
+    static {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Bundle-Version", "1.0");
+        headers.put("Export-Package", "org.aspectj.apache.bcel,org.aspectj.apache.bcel.generic,org.aspectj.apache.bcel.util," +
+                "org.aspectj.asm,org.aspectj.asm.internal,org.aspectj.bridge,org.aspectj.bridge.context," +
+                "org.aspectj.internal.lang.annotation,org.aspectj.internal.lang.reflect,org.aspectj.lang," +
+                "org.aspectj.lang.annotation,org.aspectj.lang.annotation.control,org.aspectj.lang.internal.lang," +
+                "org.aspectj.lang.reflect,org.aspectj.runtime,org.aspectj.runtime.internal,org.aspectj.runtime.internal.cflowstack," +
+                "org.aspectj.runtime.reflect,org.aspectj.util,org.aspectj.weaver,org.aspectj.weaver.ast,org.aspectj.weaver.bcel," +
+                "org.aspectj.weaver.bcel.asm,org.aspectj.weaver.internal.tools,org.aspectj.weaver.loadtime,org.aspectj.weaver.loadtime.definition," +
+                "org.aspectj.weaver.ltw,org.aspectj.weaver.model,org.aspectj.weaver.patterns,org.aspectj.weaver.reflect," +
+                "org.aspectj.weaver.tools,org.aspectj.weaver.tools.cache,aj.org.objectweb.asm,aj.org.objectweb.asm.signature");
+        ASPECTJ_HEADERS = unmodifiableMap(headers);
+    }
+
+    // without the agent (build time woven distribution) the woven bundle classes link against aspectjrt of the main classpath
+    private static final String ASPECTJ_BOOT_DELEGATION = "org.aspectj.*";
+
+    // plugin refreshes create new revisions of the same bundle directory so cache the computed classpath
+    private final Map<String, String> bundleClassPaths = new ConcurrentHashMap<>();
+
+    private volatile File customizations;
+    private volatile URL customizationsUrl;
+
     @AfterReturning(value = "execution(org.eclipse.jetty.webapp.WebAppClassLoader.new(java.lang.ClassLoader,org.eclipse.jetty.webapp.WebAppClassLoader$Context)) && this(loader)", argNames = "loader")
     public void addInWebApp(final WebAppClassLoader loader) {
+        WeavingReport.install();
         try {
-            final Method addURL = URLClassLoader.class.getDeclaredMethod("addURL", URL.class);
-            if (!addURL.isAccessible()) {
-                addURL.setAccessible(true);
-            }
-            final File customizations = getCustomizations();
-            addURL.invoke(loader, customizations.toURI().toURL());
-        } catch (final Exception e) {
+            AddUrl.HANDLE.invoke(loader, getCustomizationsUrl());
+        } catch (final RuntimeException | Error e) {
+            throw e;
+        } catch (final Throwable e) {
             throw new IllegalStateException(e);
         }
     }
 
+    @Before(value = "execution(org.apache.felix.framework.Felix.new(java.util.Map)) && args(config)", argNames = "config")
+    public void delegateAspectJRuntime(final Map config) {
+        if (ClassLoader.getSystemClassLoader().getResource("org/aspectj/weaver/loadtime/Agent.class") != null) {
+            return; // agent mode: the aspectj bundle exports the runtime (see ASPECTJ_HEADERS)
+        }
+        final Object delegation = config.get("org.osgi.framework.bootdelegation");
+        if (delegation == null || String.valueOf(delegation).trim().isEmpty()) {
+            config.put("org.osgi.framework.bootdelegation", ASPECTJ_BOOT_DELEGATION);
+        } else if (!String.valueOf(delegation).contains(ASPECTJ_BOOT_DELEGATION)) {
+            config.put("org.osgi.framework.bootdelegation", delegation + "," + ASPECTJ_BOOT_DELEGATION);
+        }
+        // boot delegation goes to the bundle parent which is the bootstrap loader by default, aspectjrt is in the framework one
+        final Object parent = config.get("org.osgi.framework.bundle.parent");
+        if (parent == null || "boot".equalsIgnoreCase(String.valueOf(parent))) {
+            config.put("org.osgi.framework.bundle.parent", "framework");
+        }
+    }
+
     @Before(value = "execution(org.apache.felix.framework.BundleRevisionImpl.new(org.osgi.framework.Bundle,java.lang.String,java.util.Map,org.apache.felix.framework.cache.Content)) && args(bundle,id,headers,content)", argNames = "bundle,id,headers,content")
     public void addManifestEntries(final Bundle bundle, final String id, final Map headers, final Content content) {
+        WeavingReport.install();
         if ("org.aspectj.weaver.loadtime.Agent".equals(headers.get("Agent-Class"))) { // this is aspectj, add missing meta
-            headers.putIfAbsent("Bundle-Version", "1.0");
-            headers.putIfAbsent("Export-Package", "org.aspectj.apache.bcel,org.aspectj.apache.bcel.generic,org.aspectj.apache.bcel.util," +
-                    "org.aspectj.asm,org.aspectj.asm.internal,org.aspectj.bridge,org.aspectj.bridge.context," +
-                    "org.aspectj.internal.lang.annotation,org.aspectj.internal.lang.reflect,org.aspectj.lang," +
-                    "org.aspectj.lang.annotation,org.aspectj.lang.annotation.control,org.aspectj.lang.internal.lang," +
-                    "org.aspectj.lang.reflect,org.aspectj.runtime,org.aspectj.runtime.internal,org.aspectj.runtime.internal.cflowstack," +
-                    "org.aspectj.runtime.reflect,org.aspectj.util,org.aspectj.weaver,org.aspectj.weaver.ast,org.aspectj.weaver.bcel," +
-                    "org.aspectj.weaver.bcel.asm,org.aspectj.weaver.internal.tools,org.aspectj.weaver.loadtime,org.aspectj.weaver.loadtime.definition," +
-                    "org.aspectj.weaver.ltw,org.aspectj.weaver.model,org.aspectj.weaver.patterns,org.aspectj.weaver.reflect," +
-                    "org.aspectj.weaver.tools,org.aspectj.weaver.tools.cache,aj.org.objectweb.asm,aj.org.objectweb.asm.signature");
+            ASPECTJ_HEADERS.forEach(headers::putIfAbsent);
         } else if ("org.sonatype.nexus.plugins.nexus-indexer-lucene-plugin".equals(headers.get("Bundle-SymbolicName"))) {
             // add the agent in the classpath to lucene plugin to let aspectj instrument the classes
             // (also see Activator which has a whitelisting too)
             final Object classpath = headers.get("Bundle-ClassPath");
             if (classpath != null) {
                 final String bundleBase = DirectoryContent.class.cast(content).toString().substring("DIRECTORY ".length());
-                final String newCp = classpath + "," + Paths.get(bundleBase).relativize(getCustomizations().toPath().toAbsolutePath());
-                headers.put("Bundle-ClassPath", newCp);
+                final String relative = bundleClassPaths.computeIfAbsent(bundleBase,
+                        base -> Paths.get(base).relativize(getCustomizations().toPath().toAbsolutePath()).toString());
+                headers.put("Bundle-ClassPath", classpath + "," + relative);
             } // todo: else unexpected, fail?
         }
     }
 
+    private URL getCustomizationsUrl() throws MalformedURLException {
+        URL url = customizationsUrl;
+        if (url == null) {
+            url = getCustomizations().toURI().toURL();
+            customizationsUrl = url;
+        }
+        return url;
+    }
+
+    // the jar does not move while the JVM runs so resolve it once
     private File getCustomizations() {
-        return requireNonNull(jarLocation(ClassLoaderSetupAspect.class), "Didn't find nexus-customizations");
+        File jar = customizations;
+        if (jar == null) {
+            jar = requireNonNull(jarLocation(ClassLoaderSetupAspect.class), "Didn't find nexus-customizations");
+            customizations = jar;
+        }
+        return jar;
     }
 
     private File jarLocation(final Class clazz) {
@@ -162,4 +219,24 @@ public class ClassLoaderSetupAspect {
         }
         return result.toString();
     }
+
+    // lazy holder: only initialized when jetty is there
+    private static final class AddUrl {
+        private static final MethodHandle HANDLE;
+        static {
+            try {
+                final Method addURL = URLClassLoader.class.getDeclaredMethod("addURL", URL.class);
+                if (!addURL.isAccessible()) {
+                    addURL.setAccessible(true);
+                }
+                HANDLE = MethodHandles.lookup().unreflect(addURL).asType(MethodType.methodType(void.class, URLClassLoader.class, URL.class));
+            } catch (final Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private AddUrl() {
+            // no-op
+        }
+    }
 }
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.core;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Per user cache of the path authorization decisions. An entry expires after a TTL and the whole cache is
+ * invalidated by the events changing targets, privileges, roles or repositories ({@link #onEvent(Object)}).
+ * A generation counter ensures a decision computed before an invalidation is never stored after it.
+ * Changes which don't post any of these events (external realms like LDAP, asynchronous handlers) are only seen
+ * once the entries expire so the TTL is the staleness bound of a decision, keep it short.
+ */
+public class AuthorizationCache {
+    // simple names (of the event class or one of its parents) of the events changing the decisions
+    private static final Set<String> INVALIDATING_EVENTS = new HashSet<>(Arrays.asList(
+            "TargetRegistryEventAdd", "TargetRegistryEventRemove", "TargetRegistryEventUpdate",
+            "AuthorizationConfigurationChanged", "SecurityConfigurationChanged", "UserPrincipalsExpired",
+            "RepositoryRegistryEventAdd", "RepositoryRegistryEventRemove", "RepositoryRegistryEventPostRemove",
+            "RepositoryGroupMembersChangedEvent", "RepositoryConfigurationUpdatedEvent", "ConfigurationChangeEvent"));
+
+    private final ConcurrentMap<Key, Entry> decisions = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final int maxSize;
+    private final long ttl;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public AuthorizationCache(final int maxSize, final long ttlMs) {
+        this.maxSize = maxSize;
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        Monitoring.gauge("NexusItemAuthorizer", "decisionCache.size", decisions::size);
+        Monitoring.gauge("NexusItemAuthorizer", "decisionCache.hits", hits::sum);
+        Monitoring.gauge("NexusItemAuthorizer", "decisionCache.misses", misses::sum);
+        Monitoring.gauge("NexusItemAuthorizer", "decisionCache.invalidations", invalidations::sum);
+    }
+
+    public boolean authorize(final Object principal, final String repository, final String path, final String action,
+                             final BooleanSupplier decision) {
+        if (maxSize <= 0 || ttl <= 0 || principal == null || path == null) {
+            return decision.getAsBoolean();
+        }
+        final Key key = new Key(principal, repository, path, action);
+        final long now = System.nanoTime();
+        final Entry cached = decisions.get(key);
+        if (cached != null && now - cached.created < ttl) {
+            hits.increment();
+            return cached.authorized;
+        }
+        misses.increment();
+        final long expectedGeneration = generation.get();
+        final boolean authorized = decision.getAsBoolean();
+        if (decisions.size() >= maxSize) {
+            evict();
+        }
+        decisions.put(key, new Entry(authorized, now));
+        if (generation.get() != expectedGeneration) { // invalidated while computing, don't keep a stale decision
+            decisions.remove(key);
+        }
+        return authorized;
+    }
+
+    public void onEvent(final Object event) {
+        if (event != null && isInvalidating(event.getClass())) {
+            invalidate();
+        }
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        decisions.clear();
+        invalidations.increment();
+    }
+
+    private static boolean isInvalidating(final Class<?> type) {
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            if (INVALIDATING_EVENTS.contains(current.getSimpleName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evict() {
+        final long now = System.nanoTime();
+        decisions.values().removeIf(it -> now - it.created >= ttl);
+        if (decisions.size() >= maxSize) {
+            final Iterator<Key> iterator = decisions.keySet().iterator();
+            int toRemove = Math.max(1, maxSize / 10);
+            while (toRemove-- > 0 && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final boolean authorized;
+        private final long created;
+
+        private Entry(final boolean authorized, final long created) {
+            this.authorized = authorized;
+            this.created = created;
+        }
+    }
+
+    private static final class Key {
+        private final Object principal;
+        private final String repository;
+        private final String path;
+        private final String action;
+        private final int hash;
+
+        private Key(final Object principal, final String repository, final String path, final String action) {
+            this.principal = principal;
+            this.repository = repository;
+            this.path = path;
+            this.action = action;
+            this.hash = Objects.hash(principal, repository, path, action);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = Key.class.cast(o);
+            return hash == key.hash
+                    && path.equals(key.path)
+                    && Objects.equals(repository, key.repository)
+                    && Objects.equals(action, key.action)
+                    && principal.equals(key.principal);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.core;
+
+import java.util.Set;
+
+import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.sonatype.nexus.proxy.registry.ContentClass;
+import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.proxy.targets.Target;
+import org.sonatype.nexus.proxy.targets.TargetMatch;
+import org.sonatype.nexus.proxy.targets.TargetRegistry;
+import org.sonatype.nexus.proxy.targets.TargetSet;
+
+@Aspect
+public class DefaultTargetRegistryAspect {
+    // max delay (ms) before a target change missed by the hooks is visible
+    private static final TargetSnapshot SNAPSHOT = new TargetSnapshot(
+            Long.getLong("talend.nexus.customizations.targets.snapshot.check", 10000));
+
+    static {
+        SNAPSHOT.registerMetrics("TargetRegistry");
+    }
+
+    @Around(value = "execution(java.util.Set org.sonatype.nexus.proxy.targets.DefaultTargetRegistry.getTargetsForContentClassPath(org.sonatype.nexus.proxy.registry.ContentClass,String)) && " +
+            "this(registry) && args(contentClass,path)", argNames = "registry,contentClass,path")
+    public Set<Target> getTargetsForContentClassPath(final TargetRegistry registry, final ContentClass contentClass, final String path) {
+        return index(registry).getTargetsForContentClassPath(contentClass, path);
+    }
+
+    @Around(value = "execution(org.sonatype.nexus.proxy.targets.TargetSet org.sonatype.nexus.proxy.targets.DefaultTargetRegistry.getTargetsForRepositoryPath(org.sonatype.nexus.proxy.repository.Repository,String)) && " +
+            "this(registry) && args(repository,path)", argNames = "registry,repository,path")
+    public TargetSet getTargetsForRepositoryPath(final TargetRegistry registry, final Repository repository, final String path) {
+        final ContentClass contentClass = repository.getRepositoryContentClass();
+        final TargetSet result = new TargetSet();
+        final PreparedPath prepared = new PreparedPath(path);
+        for (final Target target : index(registry).compatibleWith(contentClass)) {
+            if (TargetIndex.matches(target, contentClass, prepared)) {
+                result.addTargetMatch(new TargetMatch(target, repository));
+            }
+        }
+        return result;
+    }
+
+    // admin edits (AbstractRepositoryTargetPlexusResource) all go through these methods
+    @AfterReturning(value = "(execution(public * org.sonatype.nexus.proxy.targets.DefaultTargetRegistry.addRepositoryTarget(..)) || " +
+            "execution(public * org.sonatype.nexus.proxy.targets.DefaultTargetRegistry.removeRepositoryTarget(..)) || " +
+            "execution(public * org.sonatype.nexus.proxy.targets.DefaultTargetRegistry.commitChanges()) || " +
+            "execution(public * org.sonatype.nexus.proxy.targets.DefaultTargetRegistry.rollbackChanges())) && this(registry)",
+            argNames = "registry")
+    public void onChange(final TargetRegistry registry) {
+        SNAPSHOT.changed(registry, registry::getRepositoryTargets);
+    }
+
+    @After(value = "execution(* org.sonatype.sisu.goodies.eventbus.internal.DefaultEventBus.post(Object)) && args(event)", argNames = "event")
+    public void onEvent(final Object event) {
+        SNAPSHOT.onEvent(event);
+    }
+
+    private TargetIndex index(final TargetRegistry registry) {
+        return SNAPSHOT.get(registry, registry::getRepositoryTargets);
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.core;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.sonatype.nexus.proxy.maven.gav.Gav;
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Bounded cache of the strings computed from a {@link Gav}, reads are lock free (ConcurrentHashMap.get)
+ * and when the cache is full arbitrary entries are dropped (popular artifacts come back immediately).
+ */
+class GavCache {
+    private final ConcurrentMap<Key, String> values = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    GavCache(final String name, final int maxSize) {
+        this.maxSize = maxSize;
+        Monitoring.gauge("M2GavCalculator", name + ".size", values::size);
+        Monitoring.gauge("M2GavCalculator", name + ".hits", hits::sum);
+        Monitoring.gauge("M2GavCalculator", name + ".misses", misses::sum);
+        Monitoring.gauge("M2GavCalculator", name + ".hitRatio", () -> {
+            final long hit = hits.sum();
+            final long total = hit + misses.sum();
+            return total == 0 ? 0. : hit / (double) total;
+        });
+    }
+
+    String get(final Gav gav, final Supplier<String> computer) {
+        if (maxSize <= 0) {
+            return computer.get();
+        }
+        final Key key = new Key(gav);
+        final String cached = values.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        final String value = computer.get();
+        if (value != null) {
+            if (values.size() >= maxSize) {
+                evict();
+            }
+            values.putIfAbsent(key, value);
+        }
+        return value;
+    }
+
+    private void evict() {
+        final Iterator<Key> iterator = values.keySet().iterator();
+        int toRemove = Math.max(1, maxSize / 10);
+        while (toRemove-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static final class Key {
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private final String baseVersion;
+        private final String classifier;
+        private final String extension;
+        private final String name;
+        private final boolean hashed;
+        private final Gav.HashType hashType;
+        private final boolean signed;
+        private final Gav.SignatureType signatureType;
+        private final int hash;
+
+        private Key(final Gav gav) {
+            groupId = gav.getGroupId();
+            artifactId = gav.getArtifactId();
+            version = gav.getVersion();
+            baseVersion = gav.getBaseVersion();
+            classifier = gav.getClassifier();
+            extension = gav.getExtension();
+            name = gav.getName();
+            hashed = gav.isHash();
+            hashType = gav.getHashType();
+            signed = gav.isSignature();
+            signatureType = gav.getSignatureType();
+
+            int h = Objects.hashCode(groupId);
+            h = 31 * h + Objects.hashCode(artifactId);
+            h = 31 * h + Objects.hashCode(version);
+            h = 31 * h + Objects.hashCode(classifier);
+            h = 31 * h + Objects.hashCode(extension);
+            h = 31 * h + Objects.hashCode(name);
+            h = 31 * h + (hashed ? Objects.hashCode(hashType) + 1 : 0);
+            h = 31 * h + (signed ? Objects.hashCode(signatureType) + 1 : 0);
+            hash = h;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = Key.class.cast(o);
+            return hash == key.hash
+                    && Objects.equals(artifactId, key.artifactId)
+                    && Objects.equals(version, key.version)
+                    && Objects.equals(groupId, key.groupId)
+                    && Objects.equals(baseVersion, key.baseVersion)
+                    && Objects.equals(classifier, key.classifier)
+                    && Objects.equals(extension, key.extension)
+                    && Objects.equals(name, key.name)
+                    && hashed == key.hashed
+                    && hashType == key.hashType
+                    && signed == key.signed
+                    && signatureType == key.signatureType;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.sonatype.nexus.proxy.maven.gav.Gav;
+
+/**
+ * Same output as M2GavCalculator gavToPath/calculateArtifactName but written in a per thread buffer
+ * so the only allocation is the returned String. The slash form of the groupIds - a small set - is cached.
+ */
+public final class GavPathBuilder {
+    private static final int MAX_GROUPS = 4096;
+
+    private static final ConcurrentMap<String, char[]> GROUP_PATHS = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    private GavPathBuilder() {
+        // no-op
+    }
+
+    public static String path(final Gav gav) {
+        final char[] group = groupPath(gav.getGroupId());
+        final Buffer buffer = BUFFER.get();
+        buffer.length = 0;
+        buffer.append(group);
+        buffer.append(gav.getArtifactId());
+        buffer.append('/');
+        buffer.append(gav.getBaseVersion());
+        buffer.append('/');
+        appendArtifactName(buffer, gav);
+        return buffer.toString();
+    }
+
+    public static String artifactName(final Gav gav) {
+        if (!isBlank(gav.getName())) {
+            return gav.getName();
+        }
+        final Buffer buffer = BUFFER.get();
+        buffer.length = 0;
+        appendArtifactName(buffer, gav);
+        return buffer.toString();
+    }
+
+    private static void appendArtifactName(final Buffer buffer, final Gav gav) {
+        if (!isBlank(gav.getName())) {
+            buffer.append(gav.getName());
+            return;
+        }
+        buffer.append(gav.getArtifactId());
+        buffer.append('-');
+        buffer.append(gav.getVersion());
+        if (!isBlank(gav.getClassifier())) {
+            buffer.append('-');
+            buffer.append(gav.getClassifier());
+        }
+        if (gav.getExtension() != null) {
+            buffer.append('.');
+            buffer.append(gav.getExtension());
+        }
+        if (gav.isSignature()) {
+            buffer.append('.');
+            buffer.append(gav.getSignatureType().toString());
+        }
+        if (gav.isHash()) {
+            buffer.append('.');
+            buffer.append(gav.getHashType().toString());
+        }
+    }
+
+    // "/org/talend/libraries/", a leading dot is kept as it
+    private static char[] groupPath(final String groupId) {
+        final char[] cached = GROUP_PATHS.get(groupId);
+        if (cached != null) {
+            return cached;
+        }
+        final char[] path = new char[groupId.length() + 2];
+        path[0] = '/';
+        groupId.getChars(0, groupId.length(), path, 1);
+        for (int i = groupId.startsWith(".") ? 2 : 1; i <= groupId.length(); i++) {
+            if (path[i] == '.') {
+                path[i] = '/';
+            }
+        }
+        path[path.length - 1] = '/';
+        if (GROUP_PATHS.size() >= MAX_GROUPS) { // not the small set we expected, don't keep growing
+            GROUP_PATHS.clear();
+        }
+        GROUP_PATHS.putIfAbsent(groupId, path);
+        return path;
+    }
+
+    private static boolean isBlank(final String value) {
+        if (value == null) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Buffer {
+        private char[] chars = new char[256];
+        private int length;
+
+        private void append(final char c) {
+            ensureCapacity(1);
+            chars[length++] = c;
+        }
+
+        private void append(final char[] value) {
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, chars, length, value.length);
+            length += value.length;
+        }
+
+        private void append(final String value) {
+            final String text = String.valueOf(value);
+            ensureCapacity(text.length());
+            text.getChars(0, text.length(), chars, length);
+            length += text.length();
+        }
+
+        private void ensureCapacity(final int extra) {
+            if (length + extra > chars.length) {
+                final char[] bigger = new char[Math.max(chars.length * 2, length + extra)];
+                System.arraycopy(chars, 0, bigger, 0, length);
+                chars = bigger;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
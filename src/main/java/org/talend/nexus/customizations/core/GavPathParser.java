@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.core;
+
+import org.sonatype.nexus.proxy.maven.gav.Gav;
+
+/**
+ * Hand written equivalent of M2GavCalculator.pathToGav for the layouts we serve all day
+ * (releases and non timestamped snapshots, with or without classifier, checksum or signature).
+ * It works on indexes only and creates the strings it needs once, without split nor regex.
+ *
+ * Anything else (timestamped snapshots, file name not starting with artifactId-version, unknown hash...)
+ * returns {@link #UNSUPPORTED} and must be delegated to the default implementation.
+ */
+public final class GavPathParser {
+    public static final Gav UNSUPPORTED = new Gav(
+            "unsupported", "unsupported", "0", null, "unsupported", null, null, null, false, null, false, null);
+
+    private static final String MAVEN_METADATA = "maven-metadata.xml";
+    private static final String SNAPSHOT = "SNAPSHOT";
+
+    private GavPathParser() {
+        // no-op
+    }
+
+    public static Gav parse(final String path) {
+        final int start = path.startsWith("/") ? 1 : 0;
+        final int vEndPos = path.lastIndexOf('/');
+        if (vEndPos < start) {
+            return null;
+        }
+        final int aEndPos = path.lastIndexOf('/', vEndPos - 1);
+        if (aEndPos < start) {
+            return null;
+        }
+        final int gEndPos = path.lastIndexOf('/', aEndPos - 1);
+        if (gEndPos < start) {
+            return null;
+        }
+        if (gEndPos == start || aEndPos == gEndPos + 1 || vEndPos == aEndPos + 1 || vEndPos == path.length() - 1) {
+            return UNSUPPORTED; // empty segment, let nexus decide
+        }
+
+        // suffixes: [.asc][.md5|.sha1]
+        int end = path.length();
+        Gav.HashType hashType = null;
+        if (path.endsWith(".md5")) {
+            hashType = Gav.HashType.md5;
+            end -= ".md5".length();
+        } else if (path.endsWith(".sha1")) {
+            hashType = Gav.HashType.sha1;
+            end -= ".sha1".length();
+        } else if (path.endsWith(".sha256") || path.endsWith(".sha512")) {
+            return UNSUPPORTED;
+        }
+        Gav.SignatureType signatureType = null;
+        if (path.startsWith(".asc", end - ".asc".length())) {
+            signatureType = Gav.SignatureType.gpg;
+            end -= ".asc".length();
+        }
+        if (end - MAVEN_METADATA.length() >= 0 && path.startsWith(MAVEN_METADATA, end - MAVEN_METADATA.length())) {
+            return null;
+        }
+
+        // fileName must be artifactId-version[-classifier].extension
+        final int artifactLength = aEndPos - gEndPos - 1;
+        final int versionLength = vEndPos - aEndPos - 1;
+        final int nTailPos = vEndPos + 1 + artifactLength + 1 + versionLength;
+        if (nTailPos >= end
+                || !path.regionMatches(vEndPos + 1, path, gEndPos + 1, artifactLength)
+                || path.charAt(vEndPos + 1 + artifactLength) != '-'
+                || !path.regionMatches(vEndPos + 2 + artifactLength, path, aEndPos + 1, versionLength)) {
+            return UNSUPPORTED;
+        }
+        final char separator = path.charAt(nTailPos);
+        if (separator != '.' && separator != '-') {
+            return UNSUPPORTED;
+        }
+        final boolean snapshot = path.startsWith(SNAPSHOT, vEndPos - SNAPSHOT.length());
+        if (snapshot && (versionLength < SNAPSHOT.length() + 1 || path.charAt(vEndPos - SNAPSHOT.length() - 1) != '-')) {
+            return UNSUPPORTED; // version "SNAPSHOT" or "1.0SNAPSHOT", not worth a fast path
+        }
+
+        final int nExtPos = path.indexOf('.', nTailPos);
+        if (nExtPos == -1 || nExtPos >= end) {
+            return UNSUPPORTED;
+        }
+        final String classifier;
+        if (separator == '-') {
+            if (nExtPos == nTailPos + 1) {
+                return UNSUPPORTED;
+            }
+            classifier = path.substring(nTailPos + 1, nExtPos);
+        } else {
+            classifier = null;
+        }
+        final String extension = path.substring(nExtPos + 1, end);
+        if (extension.isEmpty()) {
+            return UNSUPPORTED;
+        }
+
+        return new Gav(
+                path.substring(start, gEndPos).replace('/', '.'),
+                path.substring(gEndPos + 1, aEndPos),
+                path.substring(aEndPos + 1, vEndPos),
+                classifier, extension,
+                null, null,
+                path.substring(vEndPos + 1),
+                hashType != null, hashType,
+                signatureType != null, signatureType);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.talend.nexus.customizations.core;
 
+import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.sonatype.nexus.proxy.maven.gav.Gav;
@@ -22,9 +23,43 @@ import org.sonatype.nexus.proxy.maven.gav.M2GavCalculator;
 
 @Aspect
 public class M2GavCalculatorAspect {
+    // kill switch for the hand written pathToGav (-Dtalend.nexus.customizations.gav.pathToGav.fast=false)
+    public static volatile boolean FAST_PATH_TO_GAV = Boolean.parseBoolean(
+            System.getProperty("talend.nexus.customizations.gav.pathToGav.fast", "true"));
+
+    // kill switch for the buffer based gavToPath/calculateArtifactName (-Dtalend.nexus.customizations.gav.gavToPath.fast=false)
+    public static volatile boolean FAST_GAV_TO_PATH = Boolean.parseBoolean(
+            System.getProperty("talend.nexus.customizations.gav.gavToPath.fast", "true"));
+
+    // 0 disables the caches
+    private static final int CACHE_SIZE = Integer.getInteger("talend.nexus.customizations.gav.cache.size", 10000);
+    private static final GavCache PATHS = new GavCache("pathCache", CACHE_SIZE);
+    private static final GavCache ARTIFACT_NAMES = new GavCache("artifactNameCache", CACHE_SIZE);
+
     @Around(value = "execution(String org.sonatype.nexus.proxy.maven.gav.M2GavCalculator.gavToPath(org.sonatype.nexus.proxy.maven.gav.Gav)) && this(calculator) && args(gav)",
             argNames = "calculator,gav")
     public String gavToPath(final M2GavCalculator calculator, final Gav gav) {
+        return PATHS.get(gav, () -> FAST_GAV_TO_PATH ? GavPathBuilder.path(gav) : buildPath(calculator, gav));
+    }
+
+    @Around(value = "execution(String org.sonatype.nexus.proxy.maven.gav.M2GavCalculator.calculateArtifactName(org.sonatype.nexus.proxy.maven.gav.Gav)) && args(gav)",
+            argNames = "gav")
+    public String calculateArtifactName(final ProceedingJoinPoint joinPoint, final Gav gav) {
+        return ARTIFACT_NAMES.get(gav, () -> {
+            if (FAST_GAV_TO_PATH) {
+                return GavPathBuilder.artifactName(gav);
+            }
+            try {
+                return String.class.cast(joinPoint.proceed());
+            } catch (final RuntimeException | Error e) {
+                throw e;
+            } catch (final Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private String buildPath(final M2GavCalculator calculator, final Gav gav) {
         final StringBuilder path = new StringBuilder("/");
         path.append(gav.getGroupId().startsWith(".") ? "." + gav.getGroupId().substring(1).replace('.', '/') : gav.getGroupId().replace('.', '/'));
         path.append("/");
@@ -35,4 +70,16 @@ public class M2GavCalculatorAspect {
         path.append(calculator.calculateArtifactName(gav));
         return path.toString();
     }
+
+    @Around(value = "execution(org.sonatype.nexus.proxy.maven.gav.Gav org.sonatype.nexus.proxy.maven.gav.M2GavCalculator.pathToGav(String)) && args(path)",
+            argNames = "path")
+    public Gav pathToGav(final ProceedingJoinPoint joinPoint, final String path) throws Throwable {
+        if (FAST_PATH_TO_GAV && path != null) {
+            final Gav gav = GavPathParser.parse(path);
+            if (gav != GavPathParser.UNSUPPORTED) {
+                return gav;
+            }
+        }
+        return Gav.class.cast(joinPoint.proceed());
+    }
 }
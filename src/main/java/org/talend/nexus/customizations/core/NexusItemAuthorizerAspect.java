@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.core;
+
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.UnavailableSecurityManagerException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.access.Action;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+@Aspect
+public class NexusItemAuthorizerAspect {
+    // 0 (size or ttl) disables the cache, the ttl bounds how long a change not notified by an event can be ignored
+    public static final AuthorizationCache DECISIONS = new AuthorizationCache(
+            Integer.getInteger("talend.nexus.customizations.authz.cache.size", 10000),
+            Long.getLong("talend.nexus.customizations.authz.cache.ttl", 2000));
+
+    @Around(value = "execution(boolean org.sonatype.nexus..*NexusItemAuthorizer.authorizePath(org.sonatype.nexus.proxy.repository.Repository,org.sonatype.nexus.proxy.ResourceStoreRequest,org.sonatype.nexus.proxy.access.Action)) && " +
+            "args(repository,request,action)", argNames = "repository,request,action")
+    public boolean authorizePath(final ProceedingJoinPoint joinPoint, final Repository repository,
+                                 final ResourceStoreRequest request, final Action action) {
+        return DECISIONS.authorize(principal(), repository == null ? null : repository.getId(),
+                request == null ? null : request.getRequestPath(), String.valueOf(action), () -> {
+                    try {
+                        return Boolean.class.cast(joinPoint.proceed());
+                    } catch (final RuntimeException | Error e) {
+                        throw e;
+                    } catch (final Throwable e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+    }
+
+    // before to not serve old decisions while the event is handled and after since handlers can update the state
+    @Before(value = "execution(* org.sonatype.sisu.goodies.eventbus.internal.DefaultEventBus.post(Object)) && args(event)", argNames = "event")
+    public void beforeEvent(final Object event) {
+        DECISIONS.onEvent(event);
+    }
+
+    @After(value = "execution(* org.sonatype.sisu.goodies.eventbus.internal.DefaultEventBus.post(Object)) && args(event)", argNames = "event")
+    public void afterEvent(final Object event) {
+        DECISIONS.onEvent(event);
+    }
+
+    private static Object principal() {
+        try {
+            return SecurityUtils.getSubject().getPrincipal();
+        } catch (final UnavailableSecurityManagerException e) { // no security (tests, startup)
+            return null;
+        }
+    }
+}
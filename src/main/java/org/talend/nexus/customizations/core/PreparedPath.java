@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.core;
+
+/**
+ * Facts about a requested path computed once per request and shared by all the targets it is matched against.
+ */
+public final class PreparedPath {
+    private final String path;
+    private final String extension;
+    private final boolean sources;
+    private final boolean metadata;
+
+    public PreparedPath(final String path) {
+        this.path = path;
+        final int lastSlash = path.lastIndexOf('/');
+        final int lastDot = path.lastIndexOf('.');
+        this.extension = lastDot > lastSlash ? path.substring(lastDot + 1) : "";
+        this.sources = path.contains("-sources");
+        this.metadata = path.contains("maven-metadata.xml");
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    // after the last dot of the file name, empty if none
+    public String getExtension() {
+        return extension;
+    }
+
+    public boolean isSources() {
+        return sources;
+    }
+
+    public boolean isMetadata() {
+        return metadata;
+    }
+}
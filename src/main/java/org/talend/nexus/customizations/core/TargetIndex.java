@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codehaus.plexus.util.StringUtils;
+import org.sonatype.nexus.proxy.registry.ContentClass;
+import org.sonatype.nexus.proxy.targets.Target;
+
+/**
+ * Targets of the registry grouped by the content classes they are compatible with: the compatibility
+ * (same id or compatible in either direction) is computed once per content class so incompatible targets
+ * are never visited when matching a path.
+ */
+public final class TargetIndex {
+    private final Target[] targets;
+    private final ConcurrentMap<String, Target[]> compatibles = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ContentClass> contentClasses = new ConcurrentHashMap<>();
+
+    public TargetIndex(final Collection<Target> targets) {
+        this(targets, null);
+    }
+
+    // precomputes the content classes already requested on the previous index so the first requests don't pay it
+    public TargetIndex(final Collection<Target> targets, final TargetIndex previous) {
+        this.targets = targets.toArray(new Target[0]);
+        if (previous != null) {
+            previous.contentClasses.values().forEach(this::compatibleWith);
+        }
+    }
+
+    public int size() {
+        return targets.length;
+    }
+
+    // targets are recreated when the configuration changes so same references means same targets
+    public boolean isFor(final Collection<Target> current) {
+        if (current.size() != targets.length) {
+            return false;
+        }
+        final Iterator<Target> iterator = current.iterator();
+        for (final Target target : targets) {
+            if (!iterator.hasNext() || iterator.next() != target) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Target[] compatibleWith(final ContentClass contentClass) {
+        final Target[] existing = compatibles.get(contentClass.getId());
+        if (existing != null) {
+            return existing;
+        }
+        return compatibles.computeIfAbsent(contentClass.getId(), id -> {
+            contentClasses.putIfAbsent(id, contentClass);
+            final List<Target> compatible = new ArrayList<>();
+            for (final Target target : targets) {
+                if (StringUtils.equals(target.getContentClass().getId(), contentClass.getId())
+                        || target.getContentClass().isCompatible(contentClass)
+                        || contentClass.isCompatible(target.getContentClass())) {
+                    compatible.add(target);
+                }
+            }
+            return compatible.toArray(new Target[0]);
+        });
+    }
+
+    public Set<Target> getTargetsForContentClassPath(final ContentClass contentClass, final String path) {
+        final Set<Target> result = new HashSet<>();
+        final PreparedPath prepared = new PreparedPath(path);
+        for (final Target target : compatibleWith(contentClass)) {
+            if (matches(target, contentClass, prepared)) {
+                result.add(target);
+            }
+        }
+        return result;
+    }
+
+    static boolean matches(final Target target, final ContentClass contentClass, final PreparedPath path) {
+        if (TargetMatchingOptimizationAspect.FastTarget.class.isInstance(target)) { // compatibility already checked
+            return TargetMatchingOptimizationAspect.FastTarget.class.cast(target).isPathMatched(path);
+        }
+        return target.isPathContained(contentClass, path.getPath());
+    }
+}
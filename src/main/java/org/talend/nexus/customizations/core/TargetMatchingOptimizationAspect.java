@@ -21,6 +21,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.function.Predicate;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -32,6 +33,10 @@ import org.sonatype.nexus.proxy.targets.Target;
 
 @Aspect
 public class TargetMatchingOptimizationAspect {
+    // one call out of N is checked against the stock regexes, 0 (default) disables the shadow mode
+    static final TargetShadowVerifier SHADOW = TargetShadowVerifier.create(
+            Integer.getInteger("talend.nexus.customizations.targets.shadow.sampling", 0));
+
     @Around(value = "call(org.sonatype.nexus.proxy.targets.Target.new(String,String,org.sonatype.nexus.proxy.registry.ContentClass,java.util.Collection))" +
             " && args(id,name,contentClass,patternTexts)",
             argNames = "id,name,contentClass,patternTexts")
@@ -40,8 +45,11 @@ public class TargetMatchingOptimizationAspect {
     }
 
     public static class FastTarget extends Target {
+        private static final Pattern LITERAL_EXTENSION = Pattern.compile("\\.\\*\\\\\\.([a-zA-Z0-9]+)");
+
         private final Set<String> patternTexts;
-        private final Set<Predicate<String>> matchers = new HashSet<>();
+        private final Set<Predicate<PreparedPath>> matchers = new HashSet<>();
+        private volatile Pattern[] stockPatterns; // shadow mode only
 
         public FastTarget(final String id, final String name,
                           final ContentClass contentClass,
@@ -49,25 +57,32 @@ public class TargetMatchingOptimizationAspect {
             super(id, name, contentClass, emptyList()/*skip regexes, we'll reimplement this part*/);
             this.patternTexts = new HashSet<>(patternTexts);
 
+            // all the patterns are kept, a path is contained as soon as one matches
             for (final String patternText : patternTexts) {
                 if (patternText.startsWith(".*/org/talend/") && patternText.endsWith(".*")) {// first cause the most common for us
                     final String included = patternText.substring(".*".length(), patternText.length() - ".*".length());
-                    matchers.add(s -> s.startsWith(included));
-                    break;
+                    matchers.add(s -> s.getPath().startsWith(included));
+                    continue;
                 } else if (".*".equals(patternText)) { // .*maven-metadata\.xml.*
                     matchers.add(s -> true);
-                    break;
+                    continue;
                 } else if ("(?!.*-sources.*).*".equals(patternText)) {
-                    matchers.add(s -> !s.contains("-sources"));
-                    break;
+                    matchers.add(s -> !s.isSources());
+                    continue;
                 } else if (".*maven-metadata\\.xml.*".equals(patternText)) {
-                    matchers.add(s -> s.contains("maven-metadata.xml"));
-                    break;
+                    matchers.add(PreparedPath::isMetadata);
+                    continue;
+                }
+                final Matcher extension = LITERAL_EXTENSION.matcher(patternText);
+                if (extension.matches()) { // .*\.pom
+                    final String expected = extension.group(1);
+                    matchers.add(s -> expected.equals(s.getExtension()));
+                    continue;
                 }
 
                 // default nexus impl
                 final Pattern pattern = Pattern.compile(patternText);
-                matchers.add(s -> pattern.matcher(s).matches());
+                matchers.add(s -> pattern.matcher(s.getPath()).matches());
             }
         }
 
@@ -78,17 +93,37 @@ public class TargetMatchingOptimizationAspect {
 
         @Override
         public boolean isPathContained(final ContentClass contentClass, final String path) {
-            if (StringUtils.equals(getContentClass().getId(), contentClass.getId())
+            return (StringUtils.equals(getContentClass().getId(), contentClass.getId())
                     || getContentClass().isCompatible(contentClass)
-                    || contentClass.isCompatible(getContentClass())) {
-                for (final Predicate<String> pattern : matchers) {
-                    if (pattern.test(path)) {
-                        return true;
-                    }
-                }
+                    || contentClass.isCompatible(getContentClass()))
+                    && isPathMatched(new PreparedPath(path));
+        }
+
+        // path part of isPathContained when the content class compatibility is already known (see TargetIndex)
+        public boolean isPathMatched(final PreparedPath path) {
+            final boolean matched = matches(path);
+            if (SHADOW.isEnabled()) {
+                SHADOW.sample(this, path, matched);
             }
+            return matched;
+        }
 
+        boolean matches(final PreparedPath path) {
+            for (final Predicate<PreparedPath> pattern : matchers) {
+                if (pattern.test(path)) {
+                    return true;
+                }
+            }
             return false;
         }
+
+        Pattern[] stockPatterns() {
+            Pattern[] patterns = stockPatterns;
+            if (patterns == null) { // racy but idempotent
+                patterns = patternTexts.stream().map(Pattern::compile).toArray(Pattern[]::new);
+                stockPatterns = patterns;
+            }
+            return patterns;
+        }
     }
 }
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.core;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.talend.nexus.customizations.core.TargetMatchingOptimizationAspect.FastTarget;
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Shadow mode of the target matching: one call out of {@code sampling} is re-evaluated on a background thread
+ * with the stock regex logic of {@code Target} and compared to the fast result. Mismatches are logged and,
+ * with the time spent by both implementations, exposed as {@code TargetShadow} metrics.
+ * Sampled checks are dropped (and counted) when the background thread does not keep up.
+ */
+public final class TargetShadowVerifier {
+    private final int sampling;
+    private final Executor executor;
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder mismatches = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder fastNanos = new LongAdder();
+    private final LongAdder stockNanos = new LongAdder();
+
+    public TargetShadowVerifier(final int sampling, final Executor executor) {
+        this.sampling = sampling;
+        this.executor = executor;
+        if (sampling > 0) {
+            Monitoring.gauge("TargetShadow", "checks", checks::sum);
+            Monitoring.gauge("TargetShadow", "mismatches", mismatches::sum);
+            Monitoring.gauge("TargetShadow", "dropped", dropped::sum);
+            Monitoring.gauge("TargetShadow", "fastNanos", () -> average(fastNanos));
+            Monitoring.gauge("TargetShadow", "stockNanos", () -> average(stockNanos));
+        }
+    }
+
+    // 0 disables the shadow mode
+    public static TargetShadowVerifier create(final int sampling) {
+        if (sampling <= 0) {
+            return new TargetShadowVerifier(0, Runnable::run);
+        }
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024), r -> {
+                    final Thread thread = new Thread(r, "talend-customization-target-shadow");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        return new TargetShadowVerifier(sampling, executor);
+    }
+
+    public boolean isEnabled() {
+        return sampling > 0;
+    }
+
+    public long getChecks() {
+        return checks.sum();
+    }
+
+    public long getMismatches() {
+        return mismatches.sum();
+    }
+
+    public void sample(final FastTarget target, final PreparedPath path, final boolean result) {
+        if (sampling <= 0 || (sampling > 1 && ThreadLocalRandom.current().nextInt(sampling) != 0)) {
+            return;
+        }
+        try {
+            executor.execute(() -> verify(target, path, result));
+        } catch (final RejectedExecutionException ree) {
+            dropped.increment();
+        }
+    }
+
+    private void verify(final FastTarget target, final PreparedPath path, final boolean result) {
+        // both timed here to compare them on the same (background) thread
+        final long start = System.nanoTime();
+        target.matches(path);
+        final long fastEnd = System.nanoTime();
+        final boolean expected = stockMatches(target.stockPatterns(), path.getPath());
+        final long stockEnd = System.nanoTime();
+
+        checks.increment();
+        fastNanos.add(fastEnd - start);
+        stockNanos.add(stockEnd - fastEnd);
+        if (expected != result) {
+            mismatches.increment();
+            getLogger(TargetShadowVerifier.class).warn(
+                    "[TALEND CUSTOMIZATION] Target '{}' {} '{}' but its patterns {} {}",
+                    target.getId(), result ? "matches" : "does not match", path.getPath(),
+                    expected ? "match" : "don't match", target.getPatternTexts());
+        }
+    }
+
+    // what Target.isPathContained does once the content class is compatible
+    private static boolean stockMatches(final Pattern[] patterns, final String path) {
+        for (final Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long average(final LongAdder nanos) {
+        return nanos.sum() / Math.max(1, checks.sum());
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.sonatype.nexus.proxy.targets.Target;
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Immutable {@link TargetIndex} of the registry targets published through a single volatile reference.
+ * Readers never lock: a new index is built aside and swapped when the targets change
+ * (registry mutation or target/configuration event, see {@link #changed()}) while the previous one keeps being served.
+ * As a safety net against a missed change, a single reader revalidates the published index against the registry
+ * every {@code checkInterval} ms.
+ */
+public final class TargetSnapshot {
+    private static final Set<String> CHANGING_EVENTS = new HashSet<>(Arrays.asList(
+            "TargetRegistryEventAdd", "TargetRegistryEventRemove", "TargetRegistryEventUpdate", "ConfigurationChangeEvent"));
+
+    private final long checkInterval;
+    private final AtomicLong changes = new AtomicLong();
+    private final ReentrantLock refreshing = new ReentrantLock();
+    private final LongAdder swaps = new LongAdder();
+    private volatile Published published;
+
+    public TargetSnapshot(final long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    public void registerMetrics(final String type) {
+        Monitoring.gauge(type, "snapshot.swaps", swaps::sum);
+        Monitoring.gauge(type, "snapshot.size", () -> {
+            final Published current = published;
+            return current == null ? 0 : current.index.size();
+        });
+    }
+
+    public TargetIndex get(final Object registry, final Supplier<Collection<Target>> targets) {
+        final Published current = published;
+        if (current != null && current.registry == registry && current.generation == changes.get()
+                && System.currentTimeMillis() - current.checkedAt < checkInterval) {
+            return current.index;
+        }
+        if (current != null && current.registry == registry) {
+            if (!refreshing.tryLock()) { // another thread builds the next index, keep serving this one
+                return current.index;
+            }
+        } else {
+            refreshing.lock(); // nothing to serve yet
+        }
+        try {
+            return refresh(registry, targets).index;
+        } finally {
+            refreshing.unlock();
+        }
+    }
+
+    // writer side: eagerly builds the new index to not let a reader pay it
+    public void changed(final Object registry, final Supplier<Collection<Target>> targets) {
+        changes.incrementAndGet();
+        refreshing.lock();
+        try {
+            refresh(registry, targets);
+        } finally {
+            refreshing.unlock();
+        }
+    }
+
+    // the next read rebuilds the index, used when the registry is not at hand
+    public void changed() {
+        changes.incrementAndGet();
+    }
+
+    public void onEvent(final Object event) {
+        if (event != null && CHANGING_EVENTS.contains(event.getClass().getSimpleName())) {
+            changed();
+        }
+    }
+
+    private Published refresh(final Object registry, final Supplier<Collection<Target>> targets) {
+        final long generation = changes.get(); // read before the targets so a concurrent change triggers a new refresh
+        final Published current = published;
+        final Collection<Target> latest = targets.get();
+        final long now = System.currentTimeMillis();
+        if (current != null && current.registry == registry && current.index.isFor(latest)) {
+            if (current.generation == generation) {
+                current.checkedAt = now;
+                return current;
+            }
+            final Published same = new Published(registry, current.index, generation, now); // event without target change
+            published = same;
+            return same;
+        }
+        final Published next = new Published(registry,
+                new TargetIndex(latest, current != null && current.registry == registry ? current.index : null),
+                generation, now);
+        published = next;
+        swaps.increment();
+        return next;
+    }
+
+    private static final class Published {
+        private final Object registry;
+        private final TargetIndex index;
+        private final long generation;
+        private volatile long checkedAt;
+
+        private Published(final Object registry, final TargetIndex index, final long generation, final long checkedAt) {
+            this.registry = registry;
+            this.index = index;
+            this.generation = generation;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
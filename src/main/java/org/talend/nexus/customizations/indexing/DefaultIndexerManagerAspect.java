@@ -18,12 +18,28 @@ package org.talend.nexus.customizations.indexing;
 import java.lang.reflect.InvocationTargetException;
 import java.util.List;
 
+import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.sonatype.nexus.proxy.NoSuchRepositoryException;
 
 @Aspect
 public class DefaultIndexerManagerAspect {
+    private static volatile Object manager;
+
+    /**
+     * @return the last created indexer manager, null before the indexer plugin started.
+     */
+    static Object manager() {
+        return manager;
+    }
+
+    @AfterReturning(value = "execution(org.sonatype.nexus.index.DefaultIndexerManager.new(..)) && this(manager)", argNames = "manager")
+    public void create(final Object manager) {
+        DefaultIndexerManagerAspect.manager = manager;
+        SearchWarmup.manager(manager);
+    }
+
     @Around(value = "execution(org.apache.maven.index.IteratorSearchResponse org.sonatype.nexus.index.DefaultIndexerManager.searchArtifactIterator(String,String,String,String,String,String,Integer,Integer,Integer,boolean,SearchType,List<ArtifactInfoFilter>)) && " +
             "this(manager) && args(gTerm,aTerm,vTerm,pTerm,cTerm,repositoryId,from,count,hitLimit,uniqueRGA,searchType,filters)",
             argNames = "manager,gTerm,aTerm,vTerm,pTerm,cTerm,repositoryId,from,count,hitLimit,uniqueRGA,searchType,filters")
@@ -33,8 +49,9 @@ public class DefaultIndexerManagerAspect {
                                          final Integer from, final Integer count, final Integer hitLimit,
                                          final boolean uniqueRGA, final Object searchType,
                                          final List<?> filters) throws NoSuchRepositoryException {
+        final long start = System.nanoTime();
         try {
-            return LoadedByReflection.execute(() -> {
+            final Object response = LoadedByReflection.execute(() -> {
                 try {
                     return LoadedByReflection.SEARCH.invoke(LoadedByReflection.SEARCHER, manager, gTerm, aTerm, vTerm,
                             pTerm, cTerm, repositoryId, from, count, hitLimit, uniqueRGA, searchType, filters);
@@ -48,6 +65,9 @@ public class DefaultIndexerManagerAspect {
                     throw new IllegalStateException(targetException);
                 }
             });
+            SearchTrace.searched(gTerm, aTerm, vTerm, pTerm, cTerm, repositoryId, searchType, System.nanoTime() - start,
+                    response, takePlan());
+            return response;
         } catch (final IllegalStateException ise) {
             if (NoSuchRepositoryException.class.isInstance(ise.getCause())) {
                 throw NoSuchRepositoryException.class.cast(ise.getCause());
@@ -55,4 +75,12 @@ public class DefaultIndexerManagerAspect {
             throw ise;
         }
     }
+
+    private String takePlan() {
+        try {
+            return String.class.cast(LoadedByReflection.TAKE_PLAN.invoke(LoadedByReflection.SEARCHER));
+        } catch (final IllegalAccessException | InvocationTargetException e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.index.ArtifactContext;
+import org.apache.maven.index.context.DefaultIndexingContext;
+import org.apache.maven.index.context.IndexingContext;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
+
+/**
+ * Tracks the open indexing contexts to be able to walk them directly (see {@link IndexExport})
+ * and the changes of their content (see {@link SearchETags} and {@link LatestVersions}).
+ */
+@Aspect
+public class DefaultIndexingContextAspect {
+    private static final Map<IndexingContext, Boolean> CONTEXTS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // changes each time the content of an index can have changed (see SearchETags)
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    static long generation() {
+        return GENERATION.get();
+    }
+
+    static List<IndexingContext> contexts() {
+        synchronized (CONTEXTS) {
+            return new ArrayList<>(CONTEXTS.keySet());
+        }
+    }
+
+    @AfterReturning(value = "execution(org.apache.maven.index.context.DefaultIndexingContext.new(..)) && this(context)", argNames = "context")
+    public void open(final DefaultIndexingContext context) {
+        CONTEXTS.put(context, true);
+        GENERATION.incrementAndGet();
+    }
+
+    @Before(value = "execution(void org.apache.maven.index.context.DefaultIndexingContext.close(boolean)) && this(context)", argNames = "context")
+    public void close(final DefaultIndexingContext context) {
+        CONTEXTS.remove(context);
+        MinimalArtifactInfoIndexCreatorAspect.LICENSES.reset(context);
+        MinimalArtifactInfoIndexCreatorAspect.LATEST_VERSIONS.reset(context);
+        GENERATION.incrementAndGet();
+    }
+
+    @AfterReturning(value = "execution(void org.apache.maven.index.context.DefaultIndexingContext.commit()) && this(context)", argNames = "context")
+    public void committed(final DefaultIndexingContext context) {
+        MinimalArtifactInfoIndexCreatorAspect.LATEST_VERSIONS.committed(context);
+        GENERATION.incrementAndGet();
+    }
+
+    @AfterReturning(value = "execution(void org.apache.maven.index.context.DefaultIndexingContext.merge(..)) && this(context)", argNames = "context")
+    public void merged(final DefaultIndexingContext context) {
+        MinimalArtifactInfoIndexCreatorAspect.LATEST_VERSIONS.reset(context);
+        GENERATION.incrementAndGet();
+    }
+
+    // a removed artifact can have been the latest version of its artifact, it is recomputed on commit
+    @AfterReturning(value = "execution(* org.apache.maven.index.DefaultIndexerEngine.remove(org.apache.maven.index.context.IndexingContext, " +
+            "org.apache.maven.index.ArtifactContext)) && args(context, artifactContext)", argNames = "context,artifactContext")
+    public void removed(final IndexingContext context, final ArtifactContext artifactContext) {
+        if (artifactContext != null && artifactContext.getArtifactInfo() != null) {
+            MinimalArtifactInfoIndexCreatorAspect.LATEST_VERSIONS.removed(context, artifactContext.getArtifactInfo().getUinfo());
+        }
+    }
+
+    // the dictionary documents and latest versions can have been removed
+    @AfterReturning(value = "(execution(void org.apache.maven.index.context.DefaultIndexingContext.purge()) || " +
+            "execution(void org.apache.maven.index.context.DefaultIndexingContext.replace(..))) && this(context)", argNames = "context")
+    public void contentReplaced(final DefaultIndexingContext context) {
+        MinimalArtifactInfoIndexCreatorAspect.LICENSES.reset(context);
+        MinimalArtifactInfoIndexCreatorAspect.LATEST_VERSIONS.reset(context);
+        GENERATION.incrementAndGet();
+    }
+}
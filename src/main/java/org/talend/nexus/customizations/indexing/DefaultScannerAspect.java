@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import org.apache.maven.index.ScanningRequest;
+import org.apache.maven.index.context.IndexingContext;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+/**
+ * Full reindex scans of a repository use the writer settings of {@link ReindexMode} when it is enabled.
+ */
+@Aspect
+public class DefaultScannerAspect {
+    @Around(value = "execution(org.apache.maven.index.ScanningResult org.apache.maven.index.DefaultScanner.scan(org.apache.maven.index.ScanningRequest)) && args(request)",
+            argNames = "request")
+    public Object scan(final ProceedingJoinPoint joinPoint, final ScanningRequest request) throws Throwable {
+        final IndexingContext context = request.getIndexingContext();
+        if (!ReindexMode.ENABLED || context == null) {
+            return joinPoint.proceed();
+        }
+        return ReindexMode.scan(context, () -> {
+            try {
+                return joinPoint.proceed();
+            } catch (final Exception | Error e) {
+                throw e;
+            } catch (final Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        });
+    }
+}
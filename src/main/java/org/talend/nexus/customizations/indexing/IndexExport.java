@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.IndexerField;
+import org.apache.maven.index.context.IndexingContext;
+import org.apache.maven.index.util.IndexUtils;
+import org.restlet.data.Encoding;
+import org.restlet.data.MediaType;
+import org.restlet.resource.OutputRepresentation;
+
+/**
+ * Streams all the artifacts of the indexing contexts readable by the caller as NDJSON, one line per artifact
+ * (gav, repository, url, license, licenseUrl and the checkpoint to resume after this line).
+ * Like a search hit, each artifact goes through the artifact filter of the indexer manager (target privileges).
+ * Contexts are walked in id order and each context in uinfo term order so a checkpoint
+ * (<code>&lt;context id&gt;|&lt;uinfo&gt;</code>) is enough to resume, memory stays constant whatever the index size.
+ */
+class IndexExport extends OutputRepresentation {
+    static final MediaType NDJSON = new MediaType("application/x-ndjson");
+
+    private final List<IndexingContext> contexts;
+    private final Predicate<ArtifactInfo> readable;
+    private final String checkpointContext;
+    private final String checkpointUinfo;
+    private final boolean gzip;
+
+    IndexExport(final String checkpoint, final boolean gzip) {
+        this(checkpoint, gzip, readable(DefaultIndexerManagerAspect.manager()));
+    }
+
+    IndexExport(final String checkpoint, final boolean gzip, final Predicate<ArtifactInfo> readable) {
+        super(NDJSON);
+        this.readable = readable;
+        final int sep = checkpoint == null ? -1 : checkpoint.indexOf('|');
+        if (checkpoint != null && !checkpoint.isEmpty() && sep < 0) {
+            throw new IllegalArgumentException("Invalid checkpoint '" + checkpoint + "', expected <context>|<uinfo>");
+        }
+        this.checkpointContext = sep < 0 ? null : checkpoint.substring(0, sep);
+        this.checkpointUinfo = sep < 0 ? null : checkpoint.substring(sep + 1);
+        this.gzip = gzip;
+        this.contexts = DefaultIndexingContextAspect.contexts().stream()
+                .filter(it -> it.isSearchable() && canView(it.getRepositoryId()))
+                .filter(it -> checkpointContext == null || it.getId().compareTo(checkpointContext) >= 0)
+                .sorted(comparing(IndexingContext::getId))
+                .collect(toList());
+        if (gzip) {
+            getEncodings().add(Encoding.GZIP);
+        }
+    }
+
+    @Override
+    public void write(final OutputStream outputStream) throws IOException {
+        final OutputStream stream = gzip ? new GZIPOutputStream(outputStream, 8192) : outputStream;
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        for (final IndexingContext context : contexts) {
+            final String start = context.getId().equals(checkpointContext) ? checkpointUinfo : "";
+            export(context, start, !start.isEmpty(), writer);
+        }
+        writer.flush();
+        if (gzip) {
+            GZIPOutputStream.class.cast(stream).finish();
+        }
+    }
+
+    private void export(final IndexingContext context, final String start, final boolean skipStart,
+                        final Writer writer) throws IOException {
+        final IndexSearcher searcher = context.acquireIndexSearcher();
+        try {
+            final IndexReader reader = searcher.getIndexReader();
+            final TermEnum terms = reader.terms(new Term(ArtifactInfo.UINFO, start));
+            final TermDocs docs = reader.termDocs();
+            try {
+                do {
+                    final Term term = terms.term();
+                    if (term == null || !ArtifactInfo.UINFO.equals(term.field())) {
+                        break;
+                    }
+                    if (skipStart && term.text().equals(start)) {
+                        continue;
+                    }
+                    docs.seek(term);
+                    if (docs.next()) { // first live document, uinfo is unique in a context
+                        write(context, term.text(), reader.document(docs.doc()), writer);
+                    }
+                } while (terms.next());
+            } finally {
+                docs.close();
+                terms.close();
+            }
+        } finally {
+            context.releaseIndexSearcher(searcher);
+        }
+    }
+
+    private void write(final IndexingContext context, final String uinfo, final Document document,
+                       final Writer writer) throws IOException {
+        final ArtifactInfo info = IndexUtils.constructArtifactInfo(document, context);
+        if (info == null) {
+            return;
+        }
+        info.context = context.getId(); // as a search hit, the filter resolves the repository from it
+        info.repository = context.getRepositoryId();
+        if (!readable.test(info)) {
+            return;
+        }
+        writer.write('{');
+        field(writer, "repository", context.getRepositoryId());
+        field(writer, "groupId", info.groupId);
+        field(writer, "artifactId", info.artifactId);
+        field(writer, "version", info.version);
+        field(writer, "classifier", info.classifier);
+        field(writer, "extension", info.fextension);
+        field(writer, "packaging", info.packaging);
+        field(writer, "url", document.get(key(LoadedByReflection.FLD_URL_ID)));
+        field(writer, "license", MinimalArtifactInfoIndexCreatorAspect.LICENSES.decode(document, key(LoadedByReflection.FLD_LICENSE_ID)));
+        field(writer, "licenseUrl", MinimalArtifactInfoIndexCreatorAspect.LICENSES.decode(document, key(LoadedByReflection.FLD_LICENSE_URL_ID)));
+        writer.write("\"checkpoint\":");
+        string(writer, context.getId() + '|' + uinfo);
+        writer.write("}\n");
+    }
+
+    // what DefaultIndexerManager.createRequest adds to every search: IndexArtifactFilter.filterArtifactInfo
+    // (NexusItemAuthorizer.authorizePath of the artifact path for the current user)
+    private static Predicate<ArtifactInfo> readable(final Object manager) {
+        if (manager == null) { // no search either
+            return it -> false;
+        }
+        try {
+            final Object filter = field(manager.getClass(), "indexArtifactFilter").get(manager);
+            final Method filterArtifactInfo = manager.getClass().getClassLoader()
+                    .loadClass("org.sonatype.nexus.index.IndexArtifactFilter")
+                    .getMethod("filterArtifactInfo", ArtifactInfo.class);
+            return info -> {
+                try {
+                    return Boolean.TRUE.equals(filterArtifactInfo.invoke(filter, info));
+                } catch (final IllegalAccessException | InvocationTargetException e) {
+                    return false;
+                }
+            };
+        } catch (final Exception e) {
+            throw new IllegalStateException("No indexArtifactFilter in " + manager + ", the export is no more compatible with nexus", e);
+        }
+    }
+
+    private static Field field(final Class<?> type, final String name) throws NoSuchFieldException {
+        Class<?> current = type;
+        while (current != null) {
+            try {
+                final Field field = current.getDeclaredField(name);
+                if (!field.isAccessible()) {
+                    field.setAccessible(true);
+                }
+                return field;
+            } catch (final NoSuchFieldException nsfe) {
+                current = current.getSuperclass();
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    private static String key(final Object field) {
+        return field == null ? null : IndexerField.class.cast(field).getKey();
+    }
+
+    private static void field(final Writer writer, final String name, final String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        writer.write('"');
+        writer.write(name);
+        writer.write("\":");
+        string(writer, value);
+        writer.write(',');
+    }
+
+    private static void string(final Writer writer, final String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+
+    // without a subject (no security manager) nothing is exported, without shiro (tests) everything is
+    private static boolean canView(final String repositoryId) {
+        if (!Shiro.isAvailable()) {
+            return true;
+        }
+        final Object subject = Shiro.subject();
+        return subject != null && Shiro.isPermitted(subject, "nexus:view:repository:" + repositoryId);
+    }
+}
@@ -0,0 +1,429 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.context.IndexingContext;
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Latest release and latest snapshot of each groupId:artifactId of an indexing context, as the uinfos of their main artifact.
+ * A view is built from the uinfo terms the first time a context is queried, then kept up to date when the context commits:
+ * the created documents are added and the artifacts with a removed document are recomputed from the committed index.
+ * It is rebuilt when the whole content can have changed (merge, purge, replace).
+ */
+public final class LatestVersions {
+    private static final Pattern TIMESTAMPED_SNAPSHOT = Pattern.compile("^(.*)-(\\d{8}\\.\\d{6}-\\d+)$");
+
+    private final Map<IndexingContext, State> states = new WeakHashMap<>(); // guarded by itself
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+
+    public LatestVersions() {
+        Monitoring.gauge("LatestVersions", "builds", builds::sum);
+        Monitoring.gauge("LatestVersions", "updates", updates::sum);
+        Monitoring.gauge("LatestVersions", "views", () -> {
+            synchronized (states) {
+                return states.values().stream().filter(it -> it.view != null).count();
+            }
+        });
+    }
+
+    public void added(final IndexingContext context, final Document document) {
+        final String uinfo = document.get(ArtifactInfo.UINFO);
+        if (uinfo != null) { // only visible once committed
+            state(context).added.add(uinfo);
+        }
+    }
+
+    public void removed(final IndexingContext context, final String uinfo) {
+        final String[] parts = uinfo == null ? new String[0] : uinfo.split("\\|");
+        if (parts.length >= 2) {
+            state(context).removed.add(parts[0] + ':' + parts[1]);
+        }
+    }
+
+    public void committed(final IndexingContext context) {
+        final State state = state(context);
+        synchronized (state) { // a build in progress can have read the index before this commit, apply the changes after it
+            final List<String> added = drain(state.added);
+            final List<String> removed = drain(state.removed);
+            final View view = state.view;
+            if (view == null) { // the next build reads the committed index
+                return;
+            }
+            try {
+                for (final String groupArtifact : removed) {
+                    view.replace(groupArtifact, uinfos(context, groupArtifact));
+                    updates.increment();
+                }
+            } catch (final IOException | RuntimeException e) { // closing context, rebuilt if it is used again
+                state.view = null;
+                return;
+            }
+            for (final String uinfo : added) {
+                final String[] parts = uinfo.split("\\|");
+                if (parts.length < 2 || !removed.contains(parts[0] + ':' + parts[1])) { // else read from the index above
+                    view.add(uinfo);
+                    updates.increment();
+                }
+            }
+        }
+    }
+
+    public void reset(final IndexingContext context) {
+        final State state = state(context);
+        synchronized (state) {
+            state.added.clear();
+            state.removed.clear();
+            state.view = null;
+        }
+    }
+
+    /**
+     * @param contexts the contexts to look the artifacts up in.
+     * @param preferred the contexts whose versions are used first (readable by the user), the other ones are only used
+     *                  for an artifact none of them has.
+     * @param groupArtifacts the <code>groupId:artifactId</code> to resolve.
+     * @param snapshots true for the latest version (release or snapshot), false for the latest release.
+     * @return the uinfos of the latest version of each artifact, at most one version per artifact.
+     */
+    Set<String> resolve(final Collection<IndexingContext> contexts, final Predicate<IndexingContext> preferred,
+                        final Collection<String> groupArtifacts, final boolean snapshots) {
+        final List<View> views = new ArrayList<>(contexts.size());
+        final List<View> preferredViews = new ArrayList<>(contexts.size());
+        for (final IndexingContext context : contexts) {
+            final View view = view(context);
+            if (view != null) {
+                views.add(view);
+                if (preferred.test(context)) {
+                    preferredViews.add(view);
+                }
+            }
+        }
+        final Set<String> uinfos = new HashSet<>();
+        for (final String groupArtifact : groupArtifacts) {
+            final Collection<String> latest = latest(preferredViews, groupArtifact, snapshots);
+            uinfos.addAll(latest.isEmpty() && preferredViews.size() < views.size() ? latest(views, groupArtifact, snapshots) : latest);
+        }
+        return uinfos;
+    }
+
+    private static Collection<String> latest(final List<View> views, final String groupArtifact, final boolean snapshots) {
+        Candidate best = null;
+        for (final View view : views) {
+            final Candidate candidate = view.latest(groupArtifact, snapshots);
+            if (candidate != null && (best == null || compareVersions(candidate.version, best.version) > 0)) {
+                best = candidate;
+            }
+        }
+        if (best == null) {
+            return Collections.emptySet();
+        }
+        final Set<String> uinfos = new HashSet<>();
+        for (final View view : views) { // the same version can be in several contexts with other extensions
+            final Candidate candidate = view.latest(groupArtifact, snapshots);
+            if (candidate != null && candidate.version.equals(best.version)) {
+                uinfos.addAll(candidate.uinfos);
+            }
+        }
+        return uinfos;
+    }
+
+    private View view(final IndexingContext context) {
+        final State state = state(context);
+        final View existing = state.view;
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (state) {
+            if (state.view == null) {
+                try {
+                    state.view = build(context);
+                    builds.increment();
+                } catch (final IOException | RuntimeException e) { // closing context, nothing to return
+                    return null;
+                }
+            }
+            return state.view;
+        }
+    }
+
+    private State state(final IndexingContext context) {
+        synchronized (states) {
+            return states.computeIfAbsent(context, k -> new State());
+        }
+    }
+
+    private static View build(final IndexingContext context) throws IOException {
+        final View view = new View();
+        forEachUinfo(context, "", view::add);
+        return view;
+    }
+
+    // the live uinfos of an artifact (its removed documents are gone from the committed index)
+    private static List<String> uinfos(final IndexingContext context, final String groupArtifact) throws IOException {
+        final List<String> uinfos = new ArrayList<>();
+        forEachUinfo(context, groupArtifact.replace(':', '|') + '|', uinfos::add);
+        return uinfos;
+    }
+
+    private static void forEachUinfo(final IndexingContext context, final String prefix, final Consumer<String> consumer) throws IOException {
+        final IndexSearcher searcher = context.acquireIndexSearcher();
+        try {
+            final IndexReader reader = searcher.getIndexReader();
+            final TermEnum terms = reader.terms(new Term(ArtifactInfo.UINFO, prefix));
+            final TermDocs docs = reader.termDocs();
+            try {
+                do {
+                    final Term term = terms.term();
+                    if (term == null || !ArtifactInfo.UINFO.equals(term.field()) || !term.text().startsWith(prefix)) {
+                        break;
+                    }
+                    docs.seek(term);
+                    if (docs.next()) { // deleted documents keep their terms until a merge
+                        consumer.accept(term.text());
+                    }
+                } while (terms.next());
+            } finally {
+                docs.close();
+                terms.close();
+            }
+        } finally {
+            context.releaseIndexSearcher(searcher);
+        }
+    }
+
+    private static List<String> drain(final Collection<String> pending) {
+        final List<String> drained = new ArrayList<>();
+        final Iterator<String> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained;
+    }
+
+    static boolean isSnapshot(final String version) {
+        return version.endsWith("SNAPSHOT") || TIMESTAMPED_SNAPSHOT.matcher(version).matches();
+    }
+
+    /**
+     * Maven ordering (numbers numerically, alpha &lt; beta &lt; milestone &lt; rc &lt; snapshot &lt; release &lt; sp),
+     * a timestamped snapshot is ordered as its base snapshot version then by timestamp.
+     */
+    public static int compareVersions(final String first, final String second) {
+        final Matcher firstTimestamp = TIMESTAMPED_SNAPSHOT.matcher(first);
+        final Matcher secondTimestamp = TIMESTAMPED_SNAPSHOT.matcher(second);
+        final boolean firstTimestamped = firstTimestamp.matches();
+        final boolean secondTimestamped = secondTimestamp.matches();
+        final int base = compareItems(
+                items(firstTimestamped ? firstTimestamp.group(1) + "-SNAPSHOT" : first),
+                items(secondTimestamped ? secondTimestamp.group(1) + "-SNAPSHOT" : second));
+        if (base != 0) {
+            return base;
+        }
+        return compareItems(items(firstTimestamped ? firstTimestamp.group(2) : ""), items(secondTimestamped ? secondTimestamp.group(2) : ""));
+    }
+
+    private static int compareItems(final List<Object> first, final List<Object> second) {
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            final int result = compareItem(i < first.size() ? first.get(i) : null, i < second.size() ? second.get(i) : null);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    // a missing item is 0 or a release qualifier depending on what it is compared to
+    private static int compareItem(final Object first, final Object second) {
+        if (first instanceof Long || second instanceof Long) {
+            if (first instanceof Long && second instanceof Long) {
+                return Long.compare(Long.class.cast(first), Long.class.cast(second));
+            }
+            if (first == null || second == null) {
+                return Long.compare(first == null ? 0 : Long.class.cast(first), second == null ? 0 : Long.class.cast(second));
+            }
+            return first instanceof Long ? 1 : -1; // 1.0.1 > 1.0-rc
+        }
+        final String firstQualifier = first == null ? "" : String.class.cast(first);
+        final String secondQualifier = second == null ? "" : String.class.cast(second);
+        final int rank = Integer.compare(rank(firstQualifier), rank(secondQualifier));
+        return rank != 0 ? rank : firstQualifier.compareTo(secondQualifier);
+    }
+
+    private static int rank(final String qualifier) {
+        switch (qualifier) {
+            case "alpha":
+            case "a":
+                return 0;
+            case "beta":
+            case "b":
+                return 1;
+            case "milestone":
+            case "m":
+                return 2;
+            case "rc":
+            case "cr":
+                return 3;
+            case "snapshot":
+                return 4;
+            case "":
+            case "ga":
+            case "final":
+            case "release":
+                return 5;
+            case "sp":
+                return 6;
+            default:
+                return 7;
+        }
+    }
+
+    // 1.2.0-rc1 -> [1, 2, 0, "rc", 1], trailing zeros are kept since a missing item compares as 0
+    private static List<Object> items(final String version) {
+        final List<Object> items = new ArrayList<>();
+        final String lower = version.toLowerCase();
+        int start = 0;
+        for (int i = 0; i <= lower.length(); i++) {
+            final boolean end = i == lower.length();
+            final char c = end ? '.' : lower.charAt(i);
+            final boolean separator = c == '.' || c == '-' || c == '_';
+            final boolean transition = !separator && i > start
+                    && Character.isDigit(c) != Character.isDigit(lower.charAt(i - 1));
+            if (separator || transition) {
+                if (i > start) {
+                    final String item = lower.substring(start, i);
+                    items.add(Character.isDigit(item.charAt(0)) ? parse(item) : item);
+                }
+                start = separator ? i + 1 : i;
+            }
+        }
+        return items;
+    }
+
+    private static Object parse(final String number) {
+        try {
+            return Long.parseLong(number);
+        } catch (final NumberFormatException nfe) { // too long, compared as text
+            return number;
+        }
+    }
+
+    private static final class State {
+        private final Collection<String> added = new ConcurrentLinkedQueue<>();
+        private final Collection<String> removed = ConcurrentHashMap.newKeySet(); // groupId:artifactId
+        private volatile View view;
+    }
+
+    /**
+     * groupId:artifactId to the latest release and snapshot of the main artifact (no classifier).
+     */
+    public static final class View {
+        private final Map<String, Candidate[]> latest = new ConcurrentHashMap<>();
+
+        public void add(final String uinfo) {
+            final String[] parts = uinfo.split("\\|");
+            if (parts.length < 4 || !ArtifactInfo.NA.equals(parts[3])) {
+                return;
+            }
+            final String version = parts[2];
+            final int index = isSnapshot(version) ? 1 : 0;
+            latest.compute(parts[0] + ':' + parts[1], (ga, existing) -> {
+                final Candidate[] updated = existing == null ? new Candidate[2] : existing.clone();
+                final Candidate current = updated[index];
+                if (current == null || compareVersions(version, current.version) > 0) {
+                    updated[index] = new Candidate(version, Collections.singleton(uinfo));
+                } else if (current.version.equals(version) && !current.uinfos.contains(uinfo)) {
+                    final Set<String> uinfos = new HashSet<>(current.uinfos);
+                    uinfos.add(uinfo);
+                    updated[index] = new Candidate(version, uinfos);
+                }
+                return updated;
+            });
+        }
+
+        /**
+         * Forgets what is known of an artifact and adds its current uinfos.
+         */
+        public void replace(final String groupArtifact, final Collection<String> uinfos) {
+            final View current = new View(); // swapped at once, a concurrent search never sees the artifact missing
+            uinfos.forEach(current::add);
+            final Candidate[] candidates = current.latest.get(groupArtifact);
+            if (candidates == null) {
+                latest.remove(groupArtifact);
+            } else {
+                latest.put(groupArtifact, candidates);
+            }
+        }
+
+        /**
+         * @return the uinfos of the latest version (or release if snapshots is false) of the artifact.
+         */
+        public Collection<String> uinfos(final String groupArtifact, final boolean snapshots) {
+            final Candidate candidate = latest(groupArtifact, snapshots);
+            return candidate == null ? Collections.emptySet() : candidate.uinfos;
+        }
+
+        private Candidate latest(final String groupArtifact, final boolean snapshots) {
+            final Candidate[] candidates = latest.get(groupArtifact);
+            if (candidates == null) {
+                return null;
+            }
+            final Candidate release = candidates[0];
+            final Candidate snapshot = candidates[1];
+            if (!snapshots || snapshot == null) {
+                return release;
+            }
+            return release == null || compareVersions(snapshot.version, release.version) > 0 ? snapshot : release;
+        }
+    }
+
+    private static final class Candidate {
+        private final String version;
+        private final Set<String> uinfos;
+
+        private Candidate(final String version, final Set<String> uinfos) {
+            this.version = version;
+            this.uinfos = uinfos;
+        }
+    }
+}
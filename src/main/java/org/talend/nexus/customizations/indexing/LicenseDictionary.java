@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.maven.index.context.IndexingContext;
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Dictionary encoding of the license fields: an artifact document only stores a compact id ({@code licenseRef},
+ * {@code licenseUrlRef}) and keeps the text indexed (not stored) so license searches still work.
+ * Entries are persisted as dictionary documents (no uinfo so never seen as artifacts) in each indexing context.
+ * Ids are derived from the value (64 bits hash) so the contexts merged in a group agree on them
+ * and decoding resolves an id to the same shared String instance whatever the context.
+ */
+public final class LicenseDictionary {
+    static final String[] FIELDS = {"license", "licenseUrl"};
+    static final String REF_SUFFIX = "Ref";
+
+    private static final String DICTIONARY = "talendDictionary"; // marker (indexed only) of the dictionary documents
+    private static final String DICTIONARY_ID = "talendDictionaryId";
+    private static final String DICTIONARY_VALUE = "talendDictionaryValue";
+    private static final Term ENTRIES = new Term(DICTIONARY, "entry");
+
+    private final ConcurrentMap<String, String> values = new ConcurrentHashMap<>();
+    private final Map<IndexingContext, Set<String>> persisted = new WeakHashMap<>(); // guarded by itself
+    private final LongAdder encoded = new LongAdder();
+    private final LongAdder decoded = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+
+    public LicenseDictionary() {
+        Monitoring.gauge("LicenseDictionary", "entries", values::size);
+        Monitoring.gauge("LicenseDictionary", "encoded", encoded::sum);
+        Monitoring.gauge("LicenseDictionary", "decoded", decoded::sum);
+        Monitoring.gauge("LicenseDictionary", "collisions", collisions::sum);
+    }
+
+    public void encode(final IndexingContext context, final Document document) throws IOException {
+        encode(document, persistedIds(context), entry -> context.getIndexWriter().addDocument(entry));
+    }
+
+    /**
+     * @param document the artifact document to encode.
+     * @param persistedIds ids already having a dictionary document.
+     * @param writer persists the new dictionary documents.
+     */
+    public void encode(final Document document, final Set<String> persistedIds, final DictionaryWriter writer) throws IOException {
+        for (final String field : FIELDS) {
+            final String value = document.get(field);
+            if (value == null) {
+                continue;
+            }
+            final String id = id(value);
+            final String known = values.putIfAbsent(id, value);
+            if (known != null && !known.equals(value)) { // keep the text, decoding would return the other value
+                collisions.increment();
+                continue;
+            }
+            if (persistedIds.add(id)) {
+                try {
+                    writer.add(entry(id, value));
+                } catch (final IOException | RuntimeException e) {
+                    persistedIds.remove(id);
+                    throw e;
+                }
+            }
+            document.removeFields(field);
+            document.add(new Field(field, value, Field.Store.NO, Field.Index.ANALYZED));
+            document.add(new Field(field + REF_SUFFIX, id, Field.Store.YES, Field.Index.NO));
+            encoded.increment();
+        }
+    }
+
+    // stored text for documents indexed without the dictionary, shared instance otherwise
+    public String decode(final Document document, final String field) {
+        final String text = document.get(field);
+        if (text != null) {
+            return text;
+        }
+        final String id = document.get(field + REF_SUFFIX);
+        if (id == null) {
+            return null;
+        }
+        String value = values.get(id);
+        if (value == null) { // not loaded yet (restart) or persisted by another (merged) context
+            loadOpenContexts();
+            value = values.get(id);
+        }
+        if (value != null) {
+            decoded.increment();
+        }
+        return value;
+    }
+
+    // for the consumers of the published index which don't know the dictionary
+    public void toText(final Document document) {
+        for (final String field : FIELDS) {
+            if (document.get(field + REF_SUFFIX) == null) {
+                continue;
+            }
+            final String value = decode(document, field);
+            document.removeFields(field + REF_SUFFIX);
+            if (value != null) {
+                document.add(new Field(field, value, Field.Store.YES, Field.Index.ANALYZED));
+            }
+        }
+    }
+
+    public boolean isDictionaryEntry(final Document document) {
+        return document.get(DICTIONARY_ID) != null;
+    }
+
+    // the context content changed (purge, replace), its entries are reloaded on next use
+    public void reset(final IndexingContext context) {
+        synchronized (persisted) {
+            persisted.remove(context);
+        }
+    }
+
+    private void loadOpenContexts() {
+        for (final IndexingContext context : DefaultIndexingContextAspect.contexts()) {
+            try {
+                persistedIds(context);
+            } catch (final IOException e) {
+                // next decoding will retry
+            }
+        }
+    }
+
+    private Set<String> persistedIds(final IndexingContext context) throws IOException {
+        synchronized (persisted) {
+            final Set<String> ids = persisted.get(context);
+            if (ids != null) {
+                return ids;
+            }
+        }
+        final Set<String> ids = ConcurrentHashMap.newKeySet();
+        final IndexSearcher searcher = context.acquireIndexSearcher();
+        try {
+            final IndexReader reader = searcher.getIndexReader();
+            final TermDocs docs = reader.termDocs(ENTRIES);
+            try {
+                while (docs.next()) {
+                    final Document entry = reader.document(docs.doc());
+                    final String id = entry.get(DICTIONARY_ID);
+                    values.putIfAbsent(id, entry.get(DICTIONARY_VALUE));
+                    ids.add(id);
+                }
+            } finally {
+                docs.close();
+            }
+        } finally {
+            context.releaseIndexSearcher(searcher);
+        }
+        synchronized (persisted) {
+            final Set<String> existing = persisted.putIfAbsent(context, ids);
+            return existing == null ? ids : existing;
+        }
+    }
+
+    private static Document entry(final String id, final String value) {
+        final Document entry = new Document();
+        entry.add(new Field(DICTIONARY, ENTRIES.text(), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+        entry.add(new Field(DICTIONARY_ID, id, Field.Store.YES, Field.Index.NO));
+        entry.add(new Field(DICTIONARY_VALUE, value, Field.Store.YES, Field.Index.NO));
+        return entry;
+    }
+
+    // FNV-1a, stable across JVMs unlike identity based ids
+    static String id(final String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return Long.toUnsignedString(hash, Character.MAX_RADIX);
+    }
+
+    public interface DictionaryWriter {
+        void add(Document entry) throws IOException;
+    }
+}
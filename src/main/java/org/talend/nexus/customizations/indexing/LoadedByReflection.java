@@ -43,6 +43,7 @@ public class LoadedByReflection {
     private static Method GET_KEY;
     private static Method DOC_ADD;
     static Method SEARCH;
+    static Method TAKE_PLAN;
 
     private LoadedByReflection() {
         // no-op
@@ -93,6 +94,7 @@ public class LoadedByReflection {
             SEARCH = Stream.of(SEARCHER.getClass().getMethods())
                            .filter(it -> it.getName().equals("searchArtifactIterator")).findFirst()
                            .orElseThrow(IllegalStateException::new);
+            TAKE_PLAN = SEARCHER.getClass().getMethod("takePlan");
         } catch (final Exception e) {
             throw new IllegalStateException(e);
         }
@@ -23,22 +23,35 @@ import java.util.List;
 import org.apache.lucene.document.Document;
 import org.apache.maven.index.ArtifactContext;
 import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.context.IndexingContext;
 import org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator;
 import org.apache.maven.index.util.zip.ZipFacade;
 import org.apache.maven.index.util.zip.ZipHandle;
 import org.apache.maven.model.License;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 
 @Aspect
 public class MinimalArtifactInfoIndexCreatorAspect {
+    // opt-in since it changes the stored fields: license and licenseUrl are stored as dictionary ids
+    private static final boolean LICENSE_DICTIONARY = Boolean.getBoolean("talend.nexus.customizations.index.license.dictionary");
+
+    // always used to decode since an index can have been encoded before the dictionary was disabled
+    static final LicenseDictionary LICENSES = new LicenseDictionary();
+
+    // LATEST/RELEASE searches, see Searcher
+    static final LatestVersions LATEST_VERSIONS = new LatestVersions();
+
     @AfterReturning(value = "execution(org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator.new()) && this(creator)", argNames = "creator")
     public void create(final MinimalArtifactInfoIndexCreator creator) {
         LoadedByReflection.init(creator.getClass().getClassLoader());
+        SearchWarmup.start();
     }
 
     @AfterReturning(value = "execution(void org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator.updateDocument(org.apache.maven.index.ArtifactInfo,org.apache.lucene.document.Document)) && args(artifactInfo,document)")
@@ -67,8 +80,44 @@ public class MinimalArtifactInfoIndexCreatorAspect {
     @AfterReturning(value = "execution(boolean org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator.updateArtifactInfo(org.apache.lucene.document.Document,org.apache.maven.index.ArtifactInfo)) && args(document,artifactInfo)", argNames = "document,artifactInfo")
     public void updateArtifactInfo(final Document document, final ArtifactInfo artifactInfo) {
         LoadedByReflection.set(LoadedByReflection.FLD_URL_ID, document, artifactInfo);
-        LoadedByReflection.set(LoadedByReflection.FLD_LICENSE_ID, document, artifactInfo);
-        LoadedByReflection.set(LoadedByReflection.FLD_LICENSE_URL_ID, document, artifactInfo);
+        setLicense(LoadedByReflection.FLD_LICENSE_ID, document, artifactInfo);
+        setLicense(LoadedByReflection.FLD_LICENSE_URL_ID, document, artifactInfo);
+    }
+
+    @AfterReturning(value = "execution(org.apache.lucene.document.Document org.apache.maven.index.ArtifactContext.createDocument(org.apache.maven.index.context.IndexingContext)) && args(context)",
+            returning = "document", argNames = "context,document")
+    public void encodeLicenses(final IndexingContext context, final Document document) throws IOException {
+        if (LICENSE_DICTIONARY && document != null) {
+            LICENSES.encode(context, document);
+        }
+    }
+
+    @AfterReturning(value = "execution(org.apache.lucene.document.Document org.apache.maven.index.ArtifactContext.createDocument(org.apache.maven.index.context.IndexingContext)) && args(context)",
+            returning = "document", argNames = "context,document")
+    public void trackLatestVersions(final IndexingContext context, final Document document) {
+        if (document != null) {
+            LATEST_VERSIONS.added(context, document);
+        }
+    }
+
+    // published indexes (full and incremental) keep the plain text and don't contain the dictionary,
+    // writeDocuments counts the written documents with the boolean returned by writeDocument
+    @Around(value = "execution(* org.apache.maven.index.updater.IndexDataWriter.writeDocument(org.apache.lucene.document.Document)) && args(document)",
+            argNames = "document")
+    public Object writeDocument(final ProceedingJoinPoint joinPoint, final Document document) throws Throwable {
+        if (LICENSES.isDictionaryEntry(document)) {
+            return MethodSignature.class.cast(joinPoint.getSignature()).getReturnType() == boolean.class ? Boolean.FALSE : null;
+        }
+        LICENSES.toText(document);
+        return joinPoint.proceed();
+    }
+
+    private void setLicense(final Object indexerField, final Document document, final ArtifactInfo artifactInfo) {
+        final String key = LoadedByReflection.getKey(indexerField);
+        final String value = LICENSES.decode(document, key);
+        if (value != null) {
+            artifactInfo.getAttributes().put(key, value);
+        }
     }
 
     private void talendUpdateDocument(final ArtifactInfo artifactInfo, final Document document) {
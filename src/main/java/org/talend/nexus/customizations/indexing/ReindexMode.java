@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.maven.index.context.IndexingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Opt-in (<code>talend.nexus.customizations.reindex</code>) writer settings of a full reindex scan: the documents are
+ * buffered in a bigger RAM buffer (<code>talend.nexus.customizations.reindex.ramBufferMB</code>, default 64) instead of
+ * being flushed in many small segments and once the scan is done the index is merged down to
+ * <code>talend.nexus.customizations.reindex.maxSegments</code> segments (default 1) before being committed,
+ * so searches don't pay the segments of the scan afterwards.
+ * Incremental scans (the context already has artifacts) are left as they are: they add few documents to a live index
+ * and a forced merge would rewrite all of it.
+ */
+public final class ReindexMode {
+    static final boolean ENABLED = Boolean.getBoolean("talend.nexus.customizations.reindex");
+
+    public static final double RAM_BUFFER_MB = Double.parseDouble(
+            System.getProperty("talend.nexus.customizations.reindex.ramBufferMB", "64"));
+    public static final int MAX_SEGMENTS = Integer.getInteger("talend.nexus.customizations.reindex.maxSegments", 1);
+
+    private static final AtomicLong SCANS = new AtomicLong();
+    private static final AtomicLong LAST_DOCS_PER_SECOND = new AtomicLong();
+    private static final AtomicLong LAST_SEGMENTS_BEFORE_MERGE = new AtomicLong();
+    private static final AtomicLong LAST_SEGMENTS = new AtomicLong();
+    private static final AtomicLong LAST_MERGE_MILLIS = new AtomicLong();
+    static {
+        Monitoring.gauge("Reindex", "scans", SCANS::get);
+        Monitoring.gauge("Reindex", "lastDocsPerSecond", LAST_DOCS_PER_SECOND::get);
+        Monitoring.gauge("Reindex", "lastSegmentsBeforeMerge", LAST_SEGMENTS_BEFORE_MERGE::get);
+        Monitoring.gauge("Reindex", "lastSegments", LAST_SEGMENTS::get);
+        Monitoring.gauge("Reindex", "lastMergeMillis", LAST_MERGE_MILLIS::get);
+    }
+
+    private ReindexMode() {
+        // no-op
+    }
+
+    @SuppressWarnings("deprecation") // lucene 3 only changes the buffer of an open writer through the writer itself
+    static <T> T scan(final IndexingContext context, final Callable<T> scan) throws Exception {
+        final IndexWriter writer = context.getIndexWriter();
+        if (writer.numDocs() > 1) { // more than the descriptor: incremental scan
+            return scan.call();
+        }
+        final double previousBuffer = writer.getRAMBufferSizeMB();
+        final int documentsBefore = writer.maxDoc();
+        final long start = System.nanoTime();
+        writer.setRAMBufferSizeMB(Math.max(previousBuffer, RAM_BUFFER_MB));
+        final T result;
+        try {
+            result = scan.call();
+        } finally {
+            writer.setRAMBufferSizeMB(previousBuffer);
+        }
+        final long scanNanos = System.nanoTime() - start;
+        final int documents = Math.max(0, writer.maxDoc() - documentsBefore);
+        final long docsPerSecond = documents * TimeUnit.SECONDS.toNanos(1) / Math.max(1, scanNanos);
+        SCANS.incrementAndGet();
+        LAST_DOCS_PER_SECOND.set(docsPerSecond);
+
+        final long mergeStart = System.nanoTime();
+        final int[] segments = merge(context, MAX_SEGMENTS);
+        LAST_SEGMENTS_BEFORE_MERGE.set(segments[0]);
+        LAST_SEGMENTS.set(segments[1]);
+        LAST_MERGE_MILLIS.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mergeStart));
+        getLogger().info("[TALEND CUSTOMIZATION] Indexed {} documents of {} in {}ms ({} docs/s), {} segments merged to {} in {}ms",
+                documents, context.getId(), TimeUnit.NANOSECONDS.toMillis(scanNanos), docsPerSecond,
+                segments[0], segments[1], LAST_MERGE_MILLIS.get());
+        return result;
+    }
+
+    /**
+     * Commits the writer and merges it down to maxSegments if it has more.
+     *
+     * @return segment counts before and after the merge.
+     */
+    public static int[] merge(final IndexWriter writer, final int maxSegments) throws IOException {
+        return merge(writer, maxSegments, writer::commit);
+    }
+
+    // through the context: its searcher is reopened and the commit observers (DefaultIndexingContextAspect) are called
+    private static int[] merge(final IndexingContext context, final int maxSegments) throws IOException {
+        return merge(context.getIndexWriter(), maxSegments, context::commit);
+    }
+
+    private static int[] merge(final IndexWriter writer, final int maxSegments, final Commit commit) throws IOException {
+        commit.commit();
+        final int before = segments(writer.getDirectory());
+        if (maxSegments <= 0 || before <= maxSegments) {
+            return new int[]{before, before};
+        }
+        writer.forceMerge(maxSegments);
+        commit.commit();
+        return new int[]{before, segments(writer.getDirectory())};
+    }
+
+    public static int segments(final Directory directory) throws IOException {
+        final IndexReader reader = IndexReader.open(directory);
+        try {
+            final IndexReader[] subReaders = reader.getSequentialSubReaders();
+            return subReaders == null ? 1 : subReaders.length;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private interface Commit {
+        void commit() throws IOException;
+    }
+
+    private static Logger getLogger() {
+        return LoggerFactory.getLogger(ReindexMode.class);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.IteratorResultSet;
+
+/**
+ * Iterates over an already materialized search result (shared between coalesced searches), optionally followed
+ * by the rest of the original result set when the materialization stopped early.
+ */
+public class ReplayIteratorResultSet implements IteratorResultSet {
+    private final List<ArtifactInfo> materialized;
+    private final IteratorResultSet tail;
+    private final int processed;
+    private final SearchCursor nextCursor;
+    private final Collection<ArtifactInfo> returned = new ArrayList<>();
+    private int index;
+
+    ReplayIteratorResultSet(final List<ArtifactInfo> materialized, final IteratorResultSet tail, final int processed,
+                            final SearchCursor nextCursor) {
+        this.materialized = materialized;
+        this.tail = tail;
+        this.processed = processed;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return the keyset paging cursor of the next page of the original search, null if none.
+     */
+    SearchCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    public Collection<ArtifactInfo> getReturnedArtifactInfos() {
+        return returned;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index < materialized.size() || (tail != null && tail.hasNext());
+    }
+
+    @Override
+    public ArtifactInfo next() {
+        final ArtifactInfo next;
+        if (index < materialized.size()) {
+            next = materialized.get(index++);
+        } else if (tail != null) {
+            next = tail.next();
+        } else {
+            throw new NoSuchElementException();
+        }
+        if (next != null) {
+            returned.add(next);
+        }
+        return next;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("shared result, can't be modified");
+    }
+
+    @Override
+    public Iterator<ArtifactInfo> iterator() {
+        return this;
+    }
+
+    @Override
+    public int getTotalProcessedArtifactInfoCount() {
+        return tail == null ? processed : tail.getTotalProcessedArtifactInfoCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (tail != null) {
+            tail.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset paging state of a SearchNG request: the uinfo (sort key) of the last returned artifact and how many
+ * artifacts with this same uinfo (one per indexing context) were already returned.
+ * The opaque form is the url safe base64 of <code>&lt;ties&gt;|&lt;uinfo&gt;</code>.
+ */
+public final class SearchCursor {
+    private static final ThreadLocal<SearchCursor> CURRENT = new ThreadLocal<>();
+
+    private static final SearchCursor FIRST_PAGE = new SearchCursor(null, 0);
+
+    private final String uinfo;
+    private final int ties;
+
+    private SearchCursor(final String uinfo, final int ties) {
+        this.uinfo = uinfo;
+        this.ties = ties;
+    }
+
+    public static SearchCursor current() {
+        return CURRENT.get();
+    }
+
+    static void set(final SearchCursor cursor) {
+        CURRENT.set(cursor);
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    public String getUinfo() {
+        return uinfo;
+    }
+
+    public int getTies() {
+        return ties;
+    }
+
+    static SearchCursor decode(final String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return FIRST_PAGE;
+        }
+        try {
+            final String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            final int sep = decoded.indexOf('|');
+            return new SearchCursor(decoded.substring(sep + 1), Integer.parseInt(decoded.substring(0, sep)));
+        } catch (final IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor: '" + cursor + "'", e);
+        }
+    }
+
+    SearchCursor next(final String lastUinfo, final int trailingTies) {
+        return new SearchCursor(lastUinfo, lastUinfo.equals(uinfo) ? ties + trailingTies : trailingTies);
+    }
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                     .encodeToString((ties + "|" + uinfo).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        return uinfo == null ? "" : encode();
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.restlet.data.Tag;
+import org.restlet.resource.Representation;
+import org.restlet.resource.Resource;
+
+/**
+ * Sets the entity tag computed for a SearchNG request on its serialized payload.
+ * Separated from {@link SearchNGIndexPlexusResourceAspect} since the restlet resource bridge is not loaded
+ * by the indexer plugin classloader: this aspect only depends on restlet and shares JDK types through the request attributes.
+ */
+@Aspect
+public class SearchETagAspect {
+    @AfterReturning(value = "execution(org.restlet.resource.Representation org.sonatype.plexus.rest.resource.RestletResource.represent(org.restlet.resource.Variant)) && this(resource)",
+            returning = "representation", argNames = "resource,representation")
+    public void tag(final Resource resource, final Representation representation) {
+        if (representation == null || resource.getRequest() == null) {
+            return;
+        }
+        final Object tag = resource.getRequest().getAttributes().get(SearchETags.TAG_ATTRIBUTE);
+        if (!String.class.isInstance(tag)) {
+            return;
+        }
+        representation.setTag(new Tag(String.class.cast(tag), false));
+        final Object size = resource.getRequest().getAttributes().get(SearchETags.SIZE_ATTRIBUTE);
+        if (AtomicLong.class.isInstance(size)) {
+            AtomicLong.class.cast(size).set(representation.getSize());
+        }
+    }
+}
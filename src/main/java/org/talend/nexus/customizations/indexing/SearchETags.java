@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Parameter;
+import org.restlet.data.Tag;
+import org.restlet.resource.Representation;
+import org.restlet.resource.StringRepresentation;
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Entity tags of the SearchNG responses: a hash of the normalized query, the user, the variant and the generation
+ * of the indexes (changed by any index commit, see {@link DefaultIndexingContextAspect#generation()}).
+ * A request presenting the current tag in {@code If-None-Match} gets a bodiless 304 with the tag without searching.
+ * The cost (time and size) of the last full response of each tag is kept to measure the savings.
+ */
+final class SearchETags {
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("talend.nexus.customizations.search.etag", "true"));
+
+    // request attributes read by SearchETagAspect which can be loaded by another classloader so only JDK types
+    static final String TAG_ATTRIBUTE = "org.talend.nexus.customizations.search.etag";
+    static final String SIZE_ATTRIBUTE = "org.talend.nexus.customizations.search.etag.size";
+
+    private static final int MAX_COSTS = Integer.getInteger("talend.nexus.customizations.search.etag.size", 10000);
+
+    // generations restart with the JVM
+    private static final long EPOCH = System.currentTimeMillis();
+
+    private static final ConcurrentMap<String, Cost> COSTS = new ConcurrentHashMap<>();
+    private static final LongAdder NOT_MODIFIED = new LongAdder();
+    private static final LongAdder SAVED_BYTES = new LongAdder();
+    private static final LongAdder SAVED_NANOS = new LongAdder();
+    static {
+        Monitoring.gauge("Search", "etag.notModified", NOT_MODIFIED::sum);
+        Monitoring.gauge("Search", "etag.savedBytes", SAVED_BYTES::sum);
+        Monitoring.gauge("Search", "etag.savedMillis", () -> SAVED_NANOS.sum() / 1000000);
+    }
+
+    private SearchETags() {
+        // no-op
+    }
+
+    static String tag(final Form query, final Object variant) {
+        final List<Parameter> parameters = new ArrayList<>(query);
+        parameters.sort(Comparator.comparing(Parameter::getName).thenComparing(it -> String.valueOf(it.getValue())));
+        final StringBuilder key = new StringBuilder()
+                .append(EPOCH).append('|')
+                .append(DefaultIndexingContextAspect.generation()).append('|')
+                .append(Shiro.principal()).append('|') // results are filtered per user
+                .append(variant);
+        for (final Parameter parameter : parameters) {
+            key.append('|').append(parameter.getName()).append('=').append(
+                    "a".equals(parameter.getName()) ? normalizeArtifactIds(parameter.getValue()) : parameter.getValue());
+        }
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    MessageDigest.getInstance("SHA-1").digest(key.toString().getBytes(UTF_8)));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static boolean matches(final String tag, final List<Tag> noneMatch) {
+        if (noneMatch == null) {
+            return false;
+        }
+        for (final Tag it : noneMatch) {
+            if (Tag.ALL.equals(it) || tag.equals(it.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Representation notModifiedEntity(final String tag, final MediaType mediaType) {
+        final Representation entity = new StringRepresentation("", mediaType);
+        entity.setTag(new Tag(tag, false));
+        return entity;
+    }
+
+    static void notModified(final String tag) {
+        NOT_MODIFIED.increment();
+        final Cost cost = COSTS.get(tag);
+        if (cost != null) {
+            SAVED_NANOS.add(cost.nanos);
+            SAVED_BYTES.add(Math.max(0, cost.size.get()));
+        }
+    }
+
+    // size is set once the payload is serialized (SearchETagAspect)
+    static void served(final String tag, final long nanos, final AtomicLong size) {
+        if (COSTS.size() >= MAX_COSTS) { // tags of older generations are useless anyway
+            COSTS.clear();
+        }
+        COSTS.put(tag, new Cost(nanos, size));
+    }
+
+    // the searcher uses a set of artifactIds so order and duplicates don't matter
+    private static String normalizeArtifactIds(final String aTerm) {
+        if (aTerm == null || aTerm.indexOf(',') < 0) {
+            return aTerm;
+        }
+        return String.join(",", new TreeSet<>(asList(aTerm.split(","))));
+    }
+
+    private static final class Cost {
+        private final long nanos;
+        private final AtomicLong size;
+
+        private Cost(final long nanos, final AtomicLong size) {
+            this.nanos = nanos;
+            this.size = size;
+        }
+    }
+}
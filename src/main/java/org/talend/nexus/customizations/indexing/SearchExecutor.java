@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.ResourceException;
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Bulkhead for the SearchNG requests: searches run on a bounded pool with a bounded queue and are rejected
+ * (503) when both are full or when they wait too long, this way a search storm can't take all the jetty workers
+ * and downloads keep being served.
+ * Restlet 1 resources are synchronous so the jetty thread still waits for its own search,
+ * the gain is that the number of threads blocked on lucene is bounded.
+ * A search which timed out while running keeps its thread (and its capacity) until it ends.
+ */
+final class SearchExecutor {
+    static final boolean ENABLED = Boolean.parseBoolean(
+            System.getProperty("talend.nexus.customizations.search.executor", "true"));
+
+    private static final SearchExecutor INSTANCE = new SearchExecutor(
+            Integer.getInteger("talend.nexus.customizations.search.executor.threads",
+                    Math.max(2, Runtime.getRuntime().availableProcessors() * 2)),
+            Integer.getInteger("talend.nexus.customizations.search.executor.queue", 100),
+            Long.getLong("talend.nexus.customizations.search.executor.timeout", 60000));
+    static {
+        Monitoring.gauge("Search", "executor.active", INSTANCE.executor::getActiveCount);
+        Monitoring.gauge("Search", "executor.queued", () -> INSTANCE.executor.getQueue().size());
+        Monitoring.gauge("Search", "executor.completed", INSTANCE.executor::getCompletedTaskCount);
+        Monitoring.gauge("Search", "executor.rejected", INSTANCE.rejected::sum);
+        Monitoring.gauge("Search", "executor.timeouts", INSTANCE.timeouts::sum);
+        Monitoring.gauge("Search", "executor.abandoned", INSTANCE.abandoned::get);
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final long timeout;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final AtomicInteger abandoned = new AtomicInteger(); // timed out but still running, they keep their thread
+
+    SearchExecutor(final int threads, final int queue, final long timeout) {
+        final AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<>(Math.max(1, queue)), r -> {
+            final Thread thread = new Thread(r, "talend-search-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timeout = timeout;
+    }
+
+    static Object execute(final Callable<Object> search) throws Throwable {
+        return INSTANCE.submit(search);
+    }
+
+    Object submit(final Callable<Object> search) throws Throwable {
+        final Task task = new Task(propagate(search));
+        final Future<Object> future;
+        try {
+            future = executor.submit(task);
+        } catch (final RejectedExecutionException ree) {
+            rejected.increment();
+            throw new ResourceException(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, "Too many concurrent searches, retry later");
+        }
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException te) {
+            timeouts.increment();
+            abandon(task, future);
+            throw new ResourceException(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, "Search timed out, retry later");
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            abandon(task, future);
+            throw new ResourceException(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, ie);
+        } catch (final ExecutionException ee) {
+            throw ee.getCause();
+        }
+    }
+
+    int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    int getAbandoned() {
+        return abandoned.get();
+    }
+
+    long getRejected() {
+        return rejected.sum();
+    }
+
+    long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    // a queued search is dropped from the queue right away so its slot is really free,
+    // a running one can't be interrupted (it would close the lucene NIO channels shared with other searches)
+    // so it keeps its thread until it ends and is counted as abandoned meanwhile
+    private void abandon(final Task task, final Future<Object> future) {
+        if (executor.remove(Runnable.class.cast(future))) {
+            future.cancel(false);
+            return;
+        }
+        future.cancel(false);
+        task.abandon();
+    }
+
+    private final class Task implements Callable<Object> {
+        private final Callable<Object> delegate;
+        private final AtomicInteger state = new AtomicInteger(); // 0: running or not started, 1: abandoned, 2: done
+
+        private Task(final Callable<Object> delegate) {
+            this.delegate = delegate;
+        }
+
+        private void abandon() {
+            if (state.compareAndSet(0, 1)) {
+                abandoned.incrementAndGet();
+            }
+        }
+
+        @Override
+        public Object call() throws Exception {
+            try {
+                return delegate.call();
+            } finally {
+                if (state.getAndSet(2) == 1) {
+                    abandoned.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    // the search runs as the caller: same security subject, restlet response, classloader and cursor
+    private static Callable<Object> propagate(final Callable<Object> search) {
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        final Response response = Response.getCurrent();
+        final SearchCursor cursor = SearchCursor.current();
+        final Callable<Object> task = Shiro.associate(search);
+        return () -> {
+            final Thread thread = Thread.currentThread();
+            final ClassLoader oldLoader = thread.getContextClassLoader();
+            thread.setContextClassLoader(loader);
+            Response.setCurrent(response);
+            if (cursor != null) {
+                SearchCursor.set(cursor);
+            }
+            try {
+                return task.call();
+            } finally {
+                SearchCursor.clear();
+                Response.setCurrent(null);
+                thread.setContextClassLoader(oldLoader);
+            }
+        };
+    }
+}
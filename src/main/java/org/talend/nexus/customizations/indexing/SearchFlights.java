@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import static java.util.Arrays.asList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.search.Query;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.ArtifactInfoFilter;
+import org.apache.maven.index.IteratorResultSet;
+import org.apache.maven.index.IteratorSearchResponse;
+import org.apache.maven.index.context.IndexingContext;
+import org.sonatype.nexus.proxy.NoSuchRepositoryException;
+import org.talend.nexus.customizations.indexing.SearchNGIndexPlexusResourceAspect.CachedDefaultIteratorResultSet;
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Single flight of identical searches: while a search runs, the same search (same normalized terms, same user,
+ * same kind of filters) waits for it and gets its own iterator over the shared result instead of querying lucene again.
+ * The filters of a coalesced search see the shared hits before its response is returned, SearchNG latest version
+ * collectors are filled as if the search ran.
+ */
+class SearchFlights {
+    private static final boolean ENABLED = Boolean.parseBoolean(
+            System.getProperty("talend.nexus.customizations.search.singleflight", "true"));
+
+    // bigger results are not shared, the coalesced searches run on their own
+    private static final int MAX_RESULTS = Integer.getInteger("talend.nexus.customizations.search.singleflight.maxResults", 1000);
+
+    // static since the searcher is recreated each time the indexer creator is
+    private static final LongAdder EXECUTED = new LongAdder();
+    private static final LongAdder COALESCED = new LongAdder();
+    static {
+        Monitoring.gauge("Search", "singleflight.executed", EXECUTED::sum);
+        Monitoring.gauge("Search", "singleflight.coalesced", COALESCED::sum);
+    }
+
+    private final ConcurrentMap<Key, CompletableFuture<Result>> flights = new ConcurrentHashMap<>();
+
+    Object execute(final String gTerm, final String aTerm, final String vTerm,
+                   final String pTerm, final String cTerm, final String repositoryId,
+                   final Integer from, final Integer count, final Integer hitLimit,
+                   final boolean uniqueRGA, final Object searchType, final List<?> filters,
+                   final Search search) throws NoSuchRepositoryException {
+        final List<String> filterTypes = filterTypes(filters);
+        if (!ENABLED || filterTypes == null) {
+            EXECUTED.increment();
+            return search.execute();
+        }
+
+        final Key key = new Key(asList(gTerm, normalizeArtifactIds(aTerm), vTerm, pTerm, cTerm, repositoryId,
+                from, count, hitLimit, uniqueRGA, String.valueOf(searchType), Shiro.principal(), // results are filtered per user
+                String.valueOf(SearchCursor.current()), filterTypes));
+        final CompletableFuture<Result> flight = new CompletableFuture<>();
+        final CompletableFuture<Result> running = flights.putIfAbsent(key, flight);
+        if (running != null) {
+            COALESCED.increment();
+            final Result result = await(running);
+            if (result != null) {
+                return result.newResponse(filters);
+            }
+            EXECUTED.increment(); // too big to be shared
+            return search.execute();
+        }
+
+        EXECUTED.increment();
+        try {
+            final Object response = search.execute();
+            if (!IteratorSearchResponse.class.isInstance(response)) {
+                flight.complete(null);
+                return response;
+            }
+            return materialize(IteratorSearchResponse.class.cast(response), flight);
+        } catch (final NoSuchRepositoryException | RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private Object materialize(final IteratorSearchResponse response, final CompletableFuture<Result> flight) {
+        final IteratorResultSet results = response.getResults();
+        final SearchCursor next = CachedDefaultIteratorResultSet.class.isInstance(results) ?
+                CachedDefaultIteratorResultSet.class.cast(results).getNextCursor() : null;
+        final List<ArtifactInfo> infos = new ArrayList<>();
+        while (results.hasNext()) {
+            if (infos.size() == MAX_RESULTS) { // the leader continues on the original iterator
+                flight.complete(null);
+                return new IteratorSearchResponse(response.getQuery(), response.getTotalHitsCount(),
+                        new ReplayIteratorResultSet(infos, results, 0, next));
+            }
+            infos.add(results.next());
+        }
+        final int processed = results.getTotalProcessedArtifactInfoCount();
+        try {
+            results.close();
+        } catch (final IOException e) {
+            // no-op: everything was read
+        }
+        final Result result = new Result(response.getQuery(), response.getTotalHitsCount(), Collections.unmodifiableList(infos), processed, next);
+        flight.complete(result);
+        return result.newResponse(null); // the filters of the leader already saw the hits
+    }
+
+    private Result await(final CompletableFuture<Result> running) throws NoSuchRepositoryException {
+        try {
+            return running.join();
+        } catch (final CompletionException ce) {
+            final Throwable cause = ce.getCause();
+            if (NoSuchRepositoryException.class.isInstance(cause)) {
+                throw NoSuchRepositoryException.class.cast(cause);
+            }
+            if (RuntimeException.class.isInstance(cause)) {
+                throw RuntimeException.class.cast(cause);
+            }
+            if (Error.class.isInstance(cause)) {
+                throw Error.class.cast(cause);
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // filters are instances created per search (SearchNG latest version collectors) without state before it runs
+    // so the same classes filter the same way, null when one can't be replayed
+    private static List<String> filterTypes(final List<?> filters) {
+        if (filters == null || filters.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<String> types = new ArrayList<>(filters.size());
+        for (final Object filter : filters) {
+            if (!ArtifactInfoFilter.class.isInstance(filter)) {
+                return null;
+            }
+            types.add(filter.getClass().getName());
+        }
+        return types;
+    }
+
+    // the searcher uses a set of artifactIds so order and duplicates don't matter
+    private static String normalizeArtifactIds(final String aTerm) {
+        if (aTerm == null || aTerm.indexOf(',') < 0) {
+            return aTerm;
+        }
+        return String.join(",", new TreeSet<>(asList(aTerm.split(","))));
+    }
+
+    interface Search {
+        Object execute() throws NoSuchRepositoryException;
+    }
+
+    private static final class Result {
+        private final Query query;
+        private final int totalHits;
+        private final List<ArtifactInfo> artifactInfos;
+        private final int processed;
+        private final SearchCursor next;
+
+        private Result(final Query query, final int totalHits, final List<ArtifactInfo> artifactInfos, final int processed,
+                       final SearchCursor next) {
+            this.query = query;
+            this.totalHits = totalHits;
+            this.artifactInfos = artifactInfos;
+            this.processed = processed;
+            this.next = next;
+        }
+
+        private IteratorSearchResponse newResponse(final List<?> filters) {
+            final List<ArtifactInfo> infos = filters == null || filters.isEmpty() ? artifactInfos : replay(filters);
+            return new IteratorSearchResponse(query, totalHits, new ReplayIteratorResultSet(infos, null, processed, next));
+        }
+
+        // what DefaultIteratorResultSet does with the filters of the request for each hit
+        private List<ArtifactInfo> replay(final List<?> filters) {
+            final Map<String, IndexingContext> contexts = new HashMap<>();
+            for (final IndexingContext context : DefaultIndexingContextAspect.contexts()) {
+                contexts.put(context.getId(), context);
+            }
+            final List<ArtifactInfo> accepted = new ArrayList<>(artifactInfos.size());
+            for (final ArtifactInfo info : artifactInfos) {
+                final IndexingContext context = info.context == null ? null : contexts.get(info.context);
+                boolean accepts = true;
+                for (final Object filter : filters) {
+                    if (!ArtifactInfoFilter.class.cast(filter).accepts(context, info)) {
+                        accepts = false;
+                        break;
+                    }
+                }
+                if (accepts) {
+                    accepted.add(info);
+                }
+            }
+            return accepted;
+        }
+    }
+
+    private static final class Key {
+        private final List<Object> values;
+        private final int hash;
+
+        private Key(final List<Object> values) {
+            this.values = values;
+            this.hash = values.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return this == o || (o instanceof Key && hash == Key.class.cast(o).hash && Objects.equals(values, Key.class.cast(o).values));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -17,16 +17,24 @@ package org.talend.nexus.customizations.indexing;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlType;
 
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.maven.index.ArtifactInfo;
 import org.apache.maven.index.DefaultIteratorResultSet;
 import org.apache.maven.index.IteratorResultSet;
@@ -35,22 +43,171 @@ import org.apache.maven.index.IteratorSearchResponse;
 import org.apache.maven.index.MAVEN;
 import org.apache.maven.index.context.IndexingContext;
 import org.apache.maven.index.context.NexusIndexMultiSearcher;
+import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.restlet.Context;
+import org.restlet.data.Encoding;
+import org.restlet.data.Form;
 import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.ResourceException;
+import org.restlet.resource.Variant;
 import org.sonatype.nexus.rest.model.NexusNGArtifact;
 import org.sonatype.nexus.rest.model.SearchNGResponse;
 
 @Aspect
 public class SearchNGIndexPlexusResourceAspect {
+    // page size of a keyset page without count nor hit limit, the lucene hit limit of SearchNG
+    private static final int DEFAULT_PAGE_SIZE = Integer.getInteger("talend.nexus.customizations.search.cursor.count", 250);
+
     @Around(value = "call(protected org.apache.maven.index.DefaultIteratorResultSet.new(" +
             "org.apache.maven.index.IteratorSearchRequest,org.apache.maven.index.context.NexusIndexMultiSearcher," +
             "java.util.List,org.apache.lucene.search.TopDocs)) && " +
             "args(request,indexSearcher,contexts,hits)", argNames = "request,indexSearcher,contexts,hits")
     public DefaultIteratorResultSet createCachedDefaultIteratorResultSet(final IteratorSearchRequest request, final NexusIndexMultiSearcher indexSearcher,
                                                                          final List<IndexingContext> contexts, final TopDocs hits) throws IOException {
-        return new CachedDefaultIteratorResultSet(request, indexSearcher, contexts, hits);
+        final SearchCursor cursor = SearchCursor.current();
+        if (cursor == null) {
+            return new CachedDefaultIteratorResultSet(request, indexSearcher, contexts, hits, null);
+        }
+        return sortByUinfo(request, indexSearcher, contexts, hits, cursor);
+    }
+
+    // in keyset paging mode the scored hits are not used (see sortByUinfo) so don't collect them
+    @Around("call(org.apache.lucene.search.TopScoreDocCollector org.apache.maven.index.DefaultSearchEngine.doSearchWithCeiling(..))")
+    public Object skipScoredSearch(final ProceedingJoinPoint joinPoint) throws Throwable {
+        return SearchCursor.current() == null ? joinPoint.proceed() : TopScoreDocCollector.create(1, true);
+    }
+
+    // the total of a keyset page comes from the sorted search
+    @Around(value = "call(org.apache.maven.index.IteratorSearchResponse.new(org.apache.lucene.search.Query,int,org.apache.maven.index.IteratorResultSet)) && " +
+            "args(query,totalHits,results)", argNames = "query,totalHits,results")
+    public Object keysetTotalHits(final ProceedingJoinPoint joinPoint, final Query query, final int totalHits,
+                                  final IteratorResultSet results) throws Throwable {
+        if (CachedDefaultIteratorResultSet.class.isInstance(results) && CachedDefaultIteratorResultSet.class.cast(results).keyset != null) {
+            return joinPoint.proceed(new Object[] { query, CachedDefaultIteratorResultSet.class.cast(results).keyset.totalHits, results });
+        }
+        return joinPoint.proceed();
+    }
+
+    // declared first so it is the outermost advice: nothing runs until the warm-up is done
+    @Around("execution(* org.sonatype.nexus.rest.indexng.SearchNGIndexPlexusResource.get(org.restlet.Context,org.restlet.data.Request,org.restlet.data.Response,org.restlet.resource.Variant))")
+    public Object warmup(final ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!SearchWarmup.isReady()) {
+            throw new ResourceException(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, "Search index warming up, retry later");
+        }
+        return joinPoint.proceed();
+    }
+
+    // declared right after the warm-up so a not modified search does nothing else
+    @Around(value = "execution(* org.sonatype.nexus.rest.indexng.SearchNGIndexPlexusResource.get(org.restlet.Context,org.restlet.data.Request,org.restlet.data.Response,org.restlet.resource.Variant)) && " +
+            "args(context,request,response,variant)", argNames = "context,request,response,variant")
+    public Object etag(final ProceedingJoinPoint joinPoint, final Context context, final Request request,
+                       final Response response, final Variant variant) throws Throwable {
+        if (!SearchETags.ENABLED || request == null || request.getResourceRef() == null) {
+            return joinPoint.proceed();
+        }
+        final Form query = request.getResourceRef().getQueryAsForm();
+        if (query.getFirstValue("export") != null) { // streamed, never cached
+            return joinPoint.proceed();
+        }
+        final String tag = SearchETags.tag(query, variant == null ? null : variant.getMediaType());
+        if (SearchETags.matches(tag, request.getConditions().getNoneMatch())) {
+            SearchETags.notModified(tag);
+            // not a ResourceException which would get an error body: the tagged entity only provides the ETag header
+            // of the 304 (restlet drops the entity of a 304), the conditions are consumed else Resource.handleGet
+            // evaluates them again and removes the entity
+            request.getConditions().setNoneMatch(null);
+            if (response != null) {
+                response.setStatus(Status.REDIRECTION_NOT_MODIFIED);
+            }
+            return SearchETags.notModifiedEntity(tag, variant == null ? null : variant.getMediaType());
+        }
+        final long start = System.nanoTime();
+        final Object result = joinPoint.proceed();
+        final AtomicLong size = new AtomicLong(-1);
+        request.getAttributes().put(SearchETags.TAG_ATTRIBUTE, tag);
+        request.getAttributes().put(SearchETags.SIZE_ATTRIBUTE, size);
+        SearchETags.served(tag, System.nanoTime() - start, size);
+        return result;
+    }
+
+    @Around(value = "execution(* org.sonatype.nexus.rest.indexng.SearchNGIndexPlexusResource.get(org.restlet.Context,org.restlet.data.Request,org.restlet.data.Response,org.restlet.resource.Variant)) && " +
+            "args(context,request,response,variant)", argNames = "context,request,response,variant")
+    public Object keysetPaging(final ProceedingJoinPoint joinPoint, final Context context, final Request request,
+                               final Response response, final Variant variant) throws Throwable {
+        final String cursor = request == null || request.getResourceRef() == null ?
+                null : request.getResourceRef().getQueryAsForm().getFirstValue("cursor");
+        if (cursor == null) { // offset paging
+            return joinPoint.proceed();
+        }
+        try {
+            SearchCursor.set(SearchCursor.decode(cursor));
+        } catch (final IllegalArgumentException iae) {
+            throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST, iae.getMessage());
+        }
+        try {
+            return joinPoint.proceed();
+        } finally {
+            SearchCursor.clear();
+        }
+    }
+
+    @Around(value = "execution(* org.sonatype.nexus.rest.indexng.SearchNGIndexPlexusResource.get(org.restlet.Context,org.restlet.data.Request,org.restlet.data.Response,org.restlet.resource.Variant)) && " +
+            "args(context,request,response,variant)", argNames = "context,request,response,variant")
+    public Object export(final ProceedingJoinPoint joinPoint, final Context context, final Request request,
+                         final Response response, final Variant variant) throws Throwable {
+        if (request == null || request.getResourceRef() == null) {
+            return joinPoint.proceed();
+        }
+        final Form query = request.getResourceRef().getQueryAsForm();
+        if (!"ndjson".equals(query.getFirstValue("export"))) {
+            return joinPoint.proceed();
+        }
+        final boolean gzip = request.getClientInfo().getAcceptedEncodings().stream()
+                                    .anyMatch(it -> Encoding.GZIP.equals(it.getMetadata()));
+        try {
+            return new IndexExport(query.getFirstValue("checkpoint"), gzip);
+        } catch (final IllegalArgumentException iae) {
+            throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST, iae.getMessage());
+        }
+    }
+
+    // declared after keysetPaging and export so they stay on the caller thread: only the search itself changes of thread
+    @Around(value = "execution(* org.sonatype.nexus.rest.indexng.SearchNGIndexPlexusResource.get(org.restlet.Context,org.restlet.data.Request,org.restlet.data.Response,org.restlet.resource.Variant))")
+    public Object bulkhead(final ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!SearchExecutor.ENABLED) {
+            return joinPoint.proceed();
+        }
+        return SearchExecutor.execute(() -> {
+            try {
+                return joinPoint.proceed();
+            } catch (final Exception | Error e) {
+                throw e;
+            } catch (final Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        });
+    }
+
+    // declared last to run on the bulkhead thread, like the search and the enrichment it traces
+    @Around("execution(* org.sonatype.nexus.rest.indexng.SearchNGIndexPlexusResource.get(org.restlet.Context,org.restlet.data.Request,org.restlet.data.Response,org.restlet.resource.Variant))")
+    public Object trace(final ProceedingJoinPoint joinPoint) throws Throwable {
+        final SearchTrace trace = SearchTrace.open();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            trace.close();
+        }
+    }
+
+    // only in keyset paging mode to not change the payload of the other requests
+    @Around("call(org.sonatype.nexus.rest.model.SearchNGResponse.new())")
+    public Object createSearchNGResponse(final ProceedingJoinPoint joinPoint) throws Throwable {
+        return SearchCursor.current() == null ? joinPoint.proceed() : new ExtendedSearchNGResponse();
     }
 
     @Around("call(org.sonatype.nexus.rest.model.NexusNGArtifact.new())")
@@ -63,9 +220,18 @@ public class SearchNGIndexPlexusResourceAspect {
     public void packSearchNGResponse(final SearchNGResponse response,
                                      final Request request, final Map<String, String> terms,
                                      final IteratorSearchResponse iterator, final boolean forceExpand) {
+        final long start = System.nanoTime();
         final IteratorResultSet results = iterator.getResults();
+        final Collection<ArtifactInfo> artifactInfos;
         if (CachedDefaultIteratorResultSet.class.isInstance(results)) {
-            CachedDefaultIteratorResultSet.class.cast(results).artifactInfos.forEach(it -> {
+            artifactInfos = CachedDefaultIteratorResultSet.class.cast(results).artifactInfos;
+        } else if (ReplayIteratorResultSet.class.isInstance(results)) { // coalesced search
+            artifactInfos = ReplayIteratorResultSet.class.cast(results).getReturnedArtifactInfos();
+        } else {
+            artifactInfos = null;
+        }
+        if (artifactInfos != null) {
+            artifactInfos.forEach(it -> {
                 response.getData().stream()
                         .filter(ExtendedNexusNGArtifact.class::isInstance)
                         .filter(art -> matches(art, it))
@@ -77,6 +243,65 @@ public class SearchNGIndexPlexusResourceAspect {
                         });
             });
         }
+
+        final SearchCursor next = nextCursor(results);
+        if (next != null && SearchCursor.current() != null && ExtendedSearchNGResponse.class.isInstance(response)) {
+            ExtendedSearchNGResponse.class.cast(response).setCursor(next.encode());
+        }
+        SearchTrace.enriched(System.nanoTime() - start);
+    }
+
+    // same hits but in uinfo order, starting after the cursor: one page plus the ties returned by the previous pages
+    // and one hit to know if there is a next page
+    private CachedDefaultIteratorResultSet sortByUinfo(final IteratorSearchRequest request, final NexusIndexMultiSearcher indexSearcher,
+                                                       final List<IndexingContext> contexts, final TopDocs hits,
+                                                       final SearchCursor cursor) throws IOException {
+        // the scored hits were skipped (skipScoredSearch) so they can't size the page
+        final int pageSize = request.getCount() > 0 ? request.getCount() :
+                (request.getResultHitLimit() > 0 ? request.getResultHitLimit() : DEFAULT_PAGE_SIZE);
+        final int skippable = cursor.getUinfo() == null ? 0 : cursor.getTies();
+        final TopDocs sorted = indexSearcher.search(request.getQuery(), null,
+                Math.max(1, pageSize + skippable + 1), new Sort(new SortField(Searcher.UINFO, SortField.STRING)));
+        int skipped = 0;
+        while (skipped < skippable && skipped < sorted.scoreDocs.length
+                && cursor.getUinfo().equals(uinfo(indexSearcher, sorted.scoreDocs[skipped]))) {
+            skipped++;
+        }
+        final int end = Math.min(sorted.scoreDocs.length, skipped + pageSize);
+        final ScoreDoc[] page = Arrays.copyOfRange(sorted.scoreDocs, skipped, end);
+
+        SearchCursor next = null;
+        if (end < sorted.scoreDocs.length && page.length > 0) { // the next page is not empty
+            // the cursor moves after the last examined hit, not the last returned one (filters can drop hits)
+            final String last = uinfo(indexSearcher, page[page.length - 1]);
+            int ties = 0;
+            for (int i = page.length - 1; i >= 0 && last.equals(uinfo(indexSearcher, page[i])); i--) {
+                ties++;
+            }
+            next = cursor.next(last, ties);
+        }
+        return new CachedDefaultIteratorResultSet(request, indexSearcher, contexts,
+                new TopDocs(Math.max(0, sorted.totalHits - skipped), page, sorted.getMaxScore()),
+                new Keyset(Math.max(0, sorted.totalHits - skipped), next));
+    }
+
+    // the sort values are filled by the sorted search, no need to load the documents
+    private String uinfo(final NexusIndexMultiSearcher indexSearcher, final ScoreDoc hit) throws IOException {
+        if (FieldDoc.class.isInstance(hit) && FieldDoc.class.cast(hit).fields != null && FieldDoc.class.cast(hit).fields.length > 0) {
+            return String.valueOf(FieldDoc.class.cast(hit).fields[0]);
+        }
+        return indexSearcher.doc(hit.doc).get(Searcher.UINFO);
+    }
+
+    private SearchCursor nextCursor(final IteratorResultSet results) {
+        if (CachedDefaultIteratorResultSet.class.isInstance(results)) {
+            final Keyset keyset = CachedDefaultIteratorResultSet.class.cast(results).keyset;
+            return keyset == null ? null : keyset.next;
+        }
+        if (ReplayIteratorResultSet.class.isInstance(results)) {
+            return ReplayIteratorResultSet.class.cast(results).getNextCursor();
+        }
+        return null;
     }
 
     private boolean matches(final NexusNGArtifact art, final ArtifactInfo it) {
@@ -87,10 +312,17 @@ public class SearchNGIndexPlexusResourceAspect {
 
     public static class CachedDefaultIteratorResultSet extends DefaultIteratorResultSet {
         private final Collection<ArtifactInfo> artifactInfos = new ArrayList<>();
+        private final Keyset keyset; // null with offset paging
 
         private CachedDefaultIteratorResultSet(final IteratorSearchRequest request, final NexusIndexMultiSearcher indexSearcher,
-                                               final List<IndexingContext> contexts, final TopDocs hits) throws IOException {
+                                               final List<IndexingContext> contexts, final TopDocs hits,
+                                               final Keyset keyset) throws IOException {
             super(request, indexSearcher, contexts, hits);
+            this.keyset = keyset;
+        }
+
+        SearchCursor getNextCursor() {
+            return keyset == null ? null : keyset.next;
         }
 
         @Override
@@ -103,6 +335,30 @@ public class SearchNGIndexPlexusResourceAspect {
         }
     }
 
+    private static final class Keyset {
+        private final int totalHits;
+        private final SearchCursor next; // null on the last page
+
+        private Keyset(final int totalHits, final SearchCursor next) {
+            this.totalHits = totalHits;
+            this.next = next;
+        }
+    }
+
+    @XmlType(name = "searchNGResponse")
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class ExtendedSearchNGResponse extends SearchNGResponse {
+        private String cursor; // only in keyset paging mode, absent on the last page
+
+        public String getCursor() {
+            return cursor;
+        }
+
+        public void setCursor(final String cursor) {
+            this.cursor = cursor;
+        }
+    }
+
     @XmlType( name = "nexusNGArtifact" )
     @XmlAccessorType(XmlAccessType.FIELD)
     public static class ExtendedNexusNGArtifact extends NexusNGArtifact {
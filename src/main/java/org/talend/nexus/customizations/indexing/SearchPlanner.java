@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import static java.util.Arrays.asList;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.apache.maven.index.context.IndexingContext;
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Plans the g/a/v/p/c clauses of a search. In an exact search the term clauses (a term or a list of terms) don't need
+ * to be scored: they become constant score clauses. Only the single term clauses which repeat across searches
+ * (groupId, version, packaging, classifier) are cached as filters, each one holds a bitset of the size of its segments;
+ * artifactIds and the per request artifactIds lists are not, they would fill the cache with bitsets used once.
+ * Scored searches keep their clauses to keep their ranking.
+ * The cached bitsets are recomputed when the deletions of a segment change (a reindexed artifact is deleted then added).
+ */
+final class SearchPlanner {
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("talend.nexus.customizations.search.planner", "true"));
+
+    private static final int MAX_FILTERS = Integer.getInteger("talend.nexus.customizations.search.planner.filters", 128);
+    private static final Collection<String> CACHED_CLAUSES = asList("g", "v", "p", "c");
+    private static final int MAX_TERMS = 10000;
+    private static final long STATS_MAX_AGE = 60000; // in case the contexts are changed by another classloader
+
+    private static final LongAdder PLANS = new LongAdder();
+    private static final LongAdder FILTER_HITS = new LongAdder();
+    private static final LongAdder FILTER_MISSES = new LongAdder();
+    private static final Map<Query, Filter> FILTERS = new ConcurrentHashMap<>();
+    static {
+        Monitoring.gauge("Search", "planner.plans", PLANS::sum);
+        Monitoring.gauge("Search", "planner.filters", FILTERS::size);
+        Monitoring.gauge("Search", "planner.filterHits", FILTER_HITS::sum);
+        Monitoring.gauge("Search", "planner.filterMisses", FILTER_MISSES::sum);
+    }
+
+    private final Map<Term, Long> docFreqs = new ConcurrentHashMap<>();
+    private volatile long statsGeneration = -1;
+    private volatile long statsTimestamp;
+
+    /**
+     * @param clauses the g/a/v/p/c clauses in the stock order.
+     * @param exact true for an exact search (SearchType.EXACT), only its clauses can become constant score ones.
+     * @param plan receives the chosen plan (reported in the slow search log).
+     * @return the query to search.
+     */
+    BooleanQuery plan(final List<Clause> clauses, final boolean exact, final StringBuilder plan) {
+        PLANS.increment();
+        refreshStatistics();
+        final List<IndexingContext> contexts = DefaultIndexingContextAspect.contexts();
+        final BooleanQuery query = new BooleanQuery();
+        for (final Clause clause : clauses) { // lucene 3.6 conjunctions advance on the sparsest scorer whatever the order
+            final long estimate = estimate(clause.query, contexts);
+            final String mode;
+            if (!exact || !isExact(clause.query)) {
+                mode = "score";
+                query.add(clause.query, BooleanClause.Occur.MUST);
+            } else if (CACHED_CLAUSES.contains(clause.name) && TermQuery.class.isInstance(clause.query)) {
+                mode = "filter";
+                query.add(new ConstantScoreQuery(filter(clause.query)), BooleanClause.Occur.MUST);
+            } else {
+                mode = "constant";
+                query.add(new ConstantScoreQuery(new QueryWrapperFilter(clause.query)), BooleanClause.Occur.MUST);
+            }
+            if (plan.length() > 0) {
+                plan.append(' ');
+            }
+            plan.append(clause.name).append(':').append(mode)
+                .append("(df=").append(estimate < 0 ? "?" : String.valueOf(estimate)).append(')');
+        }
+        return query;
+    }
+
+    private Filter filter(final Query query) {
+        final Filter existing = FILTERS.get(query);
+        if (existing != null) {
+            FILTER_HITS.increment();
+            return existing;
+        }
+        FILTER_MISSES.increment();
+        if (FILTERS.size() >= MAX_FILTERS) { // the cached bitsets are per segment, start again rather than tracking usages
+            FILTERS.clear();
+        }
+        // the default (IGNORE) would keep matching the deleted documents of a segment which was cached before
+        return FILTERS.computeIfAbsent(query, q -> new CachingWrapperFilter(new QueryWrapperFilter(q), CachingWrapperFilter.DeletesMode.RECACHE));
+    }
+
+    // a term or a disjunction of terms (artifactIds lists)
+    private static boolean isExact(final Query query) {
+        if (TermQuery.class.isInstance(query)) {
+            return true;
+        }
+        if (!BooleanQuery.class.isInstance(query)) {
+            return false;
+        }
+        for (final BooleanClause clause : BooleanQuery.class.cast(query).getClauses()) {
+            if (clause.getOccur() != BooleanClause.Occur.SHOULD || !TermQuery.class.isInstance(clause.getQuery())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // number of matching documents (upper bound), -1 when unknown (prefix, wildcard...)
+    private long estimate(final Query query, final List<IndexingContext> contexts) {
+        if (TermQuery.class.isInstance(query)) {
+            return docFreq(TermQuery.class.cast(query).getTerm(), contexts);
+        }
+        if (BooleanQuery.class.isInstance(query)) {
+            boolean hasMust = false;
+            long must = Long.MAX_VALUE;
+            long should = 0;
+            for (final BooleanClause clause : BooleanQuery.class.cast(query).getClauses()) {
+                final long estimate = estimate(clause.getQuery(), contexts);
+                if (clause.getOccur() == BooleanClause.Occur.MUST) {
+                    hasMust = true;
+                    if (estimate >= 0) {
+                        must = Math.min(must, estimate);
+                    }
+                } else if (clause.getOccur() == BooleanClause.Occur.SHOULD) {
+                    if (estimate < 0) {
+                        should = -1;
+                    } else if (should >= 0) {
+                        should += estimate;
+                    }
+                }
+            }
+            if (hasMust) {
+                return must == Long.MAX_VALUE ? -1 : must;
+            }
+            return should;
+        }
+        return -1;
+    }
+
+    private long docFreq(final Term term, final List<IndexingContext> contexts) {
+        final Long cached = docFreqs.get(term);
+        if (cached != null) {
+            return cached;
+        }
+        long docFreq = 0;
+        for (final IndexingContext context : contexts) {
+            try {
+                final IndexSearcher searcher = context.acquireIndexSearcher();
+                try {
+                    docFreq += searcher.getIndexReader().docFreq(term);
+                } finally {
+                    context.releaseIndexSearcher(searcher);
+                }
+            } catch (final IOException | RuntimeException e) { // closing context, ignore it
+                // no-op
+            }
+        }
+        if (docFreqs.size() >= MAX_TERMS) {
+            docFreqs.clear();
+        }
+        docFreqs.put(term, docFreq);
+        return docFreq;
+    }
+
+    private void refreshStatistics() {
+        final long generation = DefaultIndexingContextAspect.generation();
+        final long now = System.currentTimeMillis();
+        if (generation != statsGeneration || now - statsTimestamp > STATS_MAX_AGE) {
+            docFreqs.clear();
+            statsGeneration = generation;
+            statsTimestamp = now;
+        }
+    }
+
+    static final class Clause {
+        private final String name;
+        private final Query query;
+
+        Clause(final String name, final Query query) {
+            this.name = name;
+            this.query = query;
+        }
+
+        Query getQuery() {
+            return query;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What one search costs: opened by the SearchNG resource (to include the enrichment of the hits) or created
+ * by the search itself when it is not called from SearchNG, then recorded in {@link SlowSearchLog}.
+ */
+final class SearchTrace {
+    private static final ThreadLocal<SearchTrace> CURRENT = new ThreadLocal<>();
+
+    // IteratorSearchResponse is not visible from all the classloaders weaving DefaultIndexerManager
+    private static final ClassValue<Method> TOTAL_HITS = new ClassValue<Method>() {
+        @Override
+        protected Method computeValue(final Class<?> type) {
+            try {
+                return type.getMethod("getTotalHitsCount");
+            } catch (final NoSuchMethodException e) {
+                return null;
+            }
+        }
+    };
+
+    private String fingerprint;
+    private int artifactIds;
+    private String repositoryId;
+    private int searches;
+    private long hits = -1;
+    private long searchNanos;
+    private long enrichmentNanos;
+    private String plan;
+
+    private SearchTrace() {
+        // no-op
+    }
+
+    static SearchTrace open() {
+        final SearchTrace trace = new SearchTrace();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    void close() {
+        CURRENT.remove();
+        if (fingerprint != null) { // not a search request (export, too many hits...)
+            SlowSearchLog.get().record(this);
+        }
+    }
+
+    static void searched(final String gTerm, final String aTerm, final String vTerm,
+                         final String pTerm, final String cTerm, final String repositoryId,
+                         final Object searchType, final long nanos, final Object response, final String plan) {
+        final SearchTrace current = CURRENT.get();
+        final SearchTrace trace = current == null ? new SearchTrace() : current;
+        if (trace.fingerprint == null) { // a SearchNG request can search again (collapsing), the first search gives the shape
+            trace.fingerprint = fingerprint(gTerm, aTerm, vTerm, pTerm, cTerm, repositoryId, searchType);
+            trace.artifactIds = artifactIds(aTerm);
+            trace.repositoryId = repositoryId;
+        }
+        trace.searches++;
+        trace.searchNanos += nanos;
+        trace.hits = totalHits(response);
+        if (plan != null) {
+            trace.plan = plan;
+        }
+        if (current == null) {
+            SlowSearchLog.get().record(trace);
+        }
+    }
+
+    static void enriched(final long nanos) {
+        final SearchTrace current = CURRENT.get();
+        if (current != null) {
+            current.enrichmentNanos += nanos;
+        }
+    }
+
+    // values are replaced by their shape (? exact, * wildcard, - absent) so the fingerprints stay few
+    static String fingerprint(final String gTerm, final String aTerm, final String vTerm,
+                              final String pTerm, final String cTerm, final String repositoryId,
+                              final Object searchType) {
+        return "g=" + shape(gTerm)
+                + " a=" + artifactIdsShape(aTerm)
+                + " v=" + ("LATEST".equalsIgnoreCase(vTerm) || "RELEASE".equalsIgnoreCase(vTerm) ? vTerm.toUpperCase() : shape(vTerm))
+                + " p=" + shape(pTerm)
+                + " c=" + ("N/P".equalsIgnoreCase(cTerm) ? "N/P" : shape(cTerm))
+                + " repository=" + (repositoryId == null ? "*" : repositoryId)
+                + " type=" + String.valueOf(searchType).toLowerCase();
+    }
+
+    static int artifactIds(final String aTerm) {
+        return aTerm == null ? 0 : (int) Arrays.stream(aTerm.split(",")).map(String::trim).filter(it -> !it.isEmpty()).distinct().count();
+    }
+
+    private static String shape(final String term) {
+        if (term == null) {
+            return "-";
+        }
+        return term.indexOf('*') >= 0 || term.indexOf('?') >= 0 ? "*" : "?";
+    }
+
+    // the studio sends comma lists of artifactIds, their size is bucketed in powers of 2
+    private static String artifactIdsShape(final String aTerm) {
+        final int count = artifactIds(aTerm);
+        if (count <= 1) {
+            return shape(aTerm);
+        }
+        final int low = Integer.highestOneBit(count);
+        return "?x" + low + "-" + (low * 2 - 1);
+    }
+
+    private static long totalHits(final Object response) {
+        if (response == null) {
+            return -1;
+        }
+        final Method method = TOTAL_HITS.get(response.getClass());
+        if (method == null) {
+            return -1;
+        }
+        try {
+            return Number.class.cast(method.invoke(response)).longValue();
+        } catch (final Exception e) {
+            return -1;
+        }
+    }
+
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getTotalNanos() {
+        return searchNanos + enrichmentNanos;
+    }
+
+    @Override
+    public String toString() {
+        return fingerprint + " artifactIds=" + artifactIds + " repository=" + repositoryId + " hits=" + hits
+                + " searches=" + searches
+                + " searchMs=" + TimeUnit.NANOSECONDS.toMillis(searchNanos)
+                + " enrichmentMs=" + TimeUnit.NANOSECONDS.toMillis(enrichmentNanos)
+                + " plan=[" + (plan == null ? "-" : plan) + "]";
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.index.IteratorResultSet;
+import org.apache.maven.index.IteratorSearchResponse;
+import org.apache.maven.index.context.IndexingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Opt-in warm-up run once the indexer plugin is initialized: once the indexing contexts are all open
+ * (their count did not change during <code>talend.nexus.customizations.warmup.quietPeriod</code> seconds),
+ * the index files are read to load them in the page cache and the configured queries
+ * (<code>talend.nexus.customizations.warmup.queries</code>, <code>|</code> separated query strings
+ * with the SearchNG parameters <code>g</code>, <code>a</code>, <code>v</code>, <code>p</code>, <code>c</code>,
+ * <code>repositoryId</code> and <code>searchType</code>) are replayed through the {@link Searcher}.
+ * SearchNG requests get a 503 until it is done or <code>talend.nexus.customizations.warmup.timeout</code> seconds elapsed
+ * since the plugin loaded this class.
+ */
+final class SearchWarmup {
+    private static final boolean ENABLED = Boolean.getBoolean("talend.nexus.customizations.warmup");
+    private static final String QUERIES = System.getProperty("talend.nexus.customizations.warmup.queries", "");
+    private static final long QUIET_PERIOD = TimeUnit.SECONDS.toMillis(Long.getLong("talend.nexus.customizations.warmup.quietPeriod", 10));
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(Long.getLong("talend.nexus.customizations.warmup.timeout", 600));
+    private static final int HITS = Integer.getInteger("talend.nexus.customizations.warmup.hits", 100);
+
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+    private static final AtomicLong PRELOADED_BYTES = new AtomicLong();
+    private static final AtomicLong QUERIES_DONE = new AtomicLong();
+    private static final AtomicLong DURATION = new AtomicLong(-1);
+    private static volatile Gate gate = new Gate(ENABLED, TIMEOUT);
+    private static volatile Object manager;
+
+    private SearchWarmup() {
+        // no-op
+    }
+
+    static boolean isReady() {
+        return gate.isReady();
+    }
+
+    // tests
+    static Gate gate(final Gate newGate) {
+        final Gate previous = gate;
+        gate = newGate;
+        return previous;
+    }
+
+    static void manager(final Object indexerManager) {
+        manager = indexerManager;
+    }
+
+    static void start() {
+        if (!ENABLED || !STARTED.compareAndSet(false, true)) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        Monitoring.gauge("Warmup", "ready", () -> gate.ready ? 1 : 0);
+        Monitoring.gauge("Warmup", "durationMillis", DURATION::get);
+        Monitoring.gauge("Warmup", "preloadedBytes", PRELOADED_BYTES::get);
+        Monitoring.gauge("Warmup", "queries", QUERIES_DONE::get);
+
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "talend-search-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long[] lastChange = {System.currentTimeMillis(), -1};
+        scheduler.scheduleWithFixedDelay(() -> {
+            final List<IndexingContext> contexts = DefaultIndexingContextAspect.contexts();
+            final long now = System.currentTimeMillis();
+            if (contexts.size() != lastChange[1]) { // repositories still being registered
+                lastChange[0] = now;
+                lastChange[1] = contexts.size();
+                return;
+            }
+            if (manager == null || now - lastChange[0] < QUIET_PERIOD) {
+                return;
+            }
+            scheduler.shutdown();
+            try {
+                contexts.forEach(SearchWarmup::preload);
+                replay();
+            } catch (final RuntimeException e) {
+                getLogger().warn("[TALEND CUSTOMIZATION] Warm-up failed: {}", e.getMessage(), e);
+            } finally {
+                DURATION.set(System.currentTimeMillis() - start);
+                gate.done();
+                getLogger().info("[TALEND CUSTOMIZATION] Search warm-up done in {}ms ({} contexts, {} bytes preloaded, {} queries)",
+                        DURATION.get(), contexts.size(), PRELOADED_BYTES.get(), QUERIES_DONE.get());
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    // sequential read, enough for the OS to keep the segments in the page cache
+    private static void preload(final IndexingContext context) {
+        final File directory = context.getIndexDirectoryFile();
+        final File[] files = directory == null ? null : directory.listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+        for (final File file : files) {
+            try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                int read;
+                while ((read = channel.read(buffer)) >= 0) {
+                    PRELOADED_BYTES.addAndGet(read);
+                    buffer.clear();
+                }
+            } catch (final IOException e) { // merged meanwhile
+                getLogger().debug("[TALEND CUSTOMIZATION] Can't preload {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private static void replay() {
+        for (final String query : QUERIES.split("\\|")) {
+            if (query.trim().isEmpty()) {
+                continue;
+            }
+            final Map<String, String> params = parse(query.trim());
+            try {
+                final Object response = LoadedByReflection.execute(() -> search(params));
+                if (IteratorSearchResponse.class.isInstance(response)) {
+                    final IteratorResultSet results = IteratorSearchResponse.class.cast(response).getResults();
+                    try {
+                        for (int i = 0; i < HITS && results.hasNext(); i++) {
+                            results.next();
+                        }
+                    } finally {
+                        results.close();
+                    }
+                }
+                QUERIES_DONE.incrementAndGet();
+            } catch (final IOException | RuntimeException e) {
+                getLogger().warn("[TALEND CUSTOMIZATION] Warm-up query '{}' failed: {}", query, e.getMessage());
+            }
+        }
+    }
+
+    private static Object search(final Map<String, String> params) {
+        try {
+            final Class<?> searchType = LoadedByReflection.LOADER.loadClass("org.apache.maven.index.SearchType");
+            return LoadedByReflection.SEARCH.invoke(LoadedByReflection.SEARCHER, manager,
+                    params.get("g"), params.get("a"), params.get("v"), params.get("p"), params.get("c"), params.get("repositoryId"),
+                    0, HITS, null, false, enumValue(searchType, params.getOrDefault("searchType", "SCORED")), new ArrayList<>());
+        } catch (final IllegalAccessException | ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException(e.getTargetException());
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumValue(final Class<?> type, final String name) {
+        return Enum.valueOf((Class) type, name);
+    }
+
+    static Map<String, String> parse(final String query) {
+        final Map<String, String> params = new HashMap<>();
+        for (final String param : query.split("&")) {
+            final int sep = param.indexOf('=');
+            if (sep > 0) {
+                try {
+                    params.put(param.substring(0, sep), URLDecoder.decode(param.substring(sep + 1), UTF_8.name()));
+                } catch (final UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return params;
+    }
+
+    // searches are served once the warm-up is done or at the deadline counted from the class initialization:
+    // if the warm-up never starts (indexer plugin failure) the searches are not rejected forever
+    static final class Gate {
+        private final long timeout;
+        private final long deadline;
+        private volatile boolean ready;
+
+        Gate(final boolean enabled, final long timeout) {
+            this.timeout = timeout;
+            this.deadline = System.currentTimeMillis() + timeout;
+            this.ready = !enabled;
+        }
+
+        boolean isReady() {
+            if (!ready && System.currentTimeMillis() > deadline) {
+                ready = true;
+                getLogger().warn("[TALEND CUSTOMIZATION] Warm-up not finished after {}s, serving searches", TimeUnit.MILLISECONDS.toSeconds(timeout));
+            }
+            return ready;
+        }
+
+        void done() {
+            ready = true;
+        }
+    }
+
+    private static Logger getLogger() {
+        return LoggerFactory.getLogger(SearchWarmup.class);
+    }
+}
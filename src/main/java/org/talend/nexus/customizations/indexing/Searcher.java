@@ -16,6 +16,9 @@
 package org.talend.nexus.customizations.indexing;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -23,19 +26,32 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.maven.index.context.IndexingContext;
 import org.sonatype.nexus.proxy.NoSuchRepositoryException;
+import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
+import org.sonatype.nexus.proxy.repository.GroupRepository;
+import org.sonatype.nexus.proxy.repository.Repository;
 
 public class Searcher {
+    static final String UINFO = "u"; // ArtifactInfo.UINFO, sort key of the keyset paging
+
     private final Method createRequest;
     private final Method searchIterator;
     private final Method constructQuery;
     private final Supplier<Object> booleanQueryFactory;
+    private final Constructor<?> termRangeQuery;
     private final Method addClause;
     private final Object must;
     private final Object should;
@@ -47,6 +63,10 @@ public class Searcher {
     private final Object packaging;
     private final Class<?> artifactInfoFilter;
     private final Field classifierInfo;
+    private final Field repositoryRegistry;
+    private final SearchFlights flights;
+    private final SearchPlanner planner = new SearchPlanner();
+    private final ThreadLocal<String> plan = new ThreadLocal<>(); // read by DefaultIndexerManagerAspect for the slow search log
 
     public Searcher(final ClassLoader loader) {
         try {
@@ -54,6 +74,7 @@ public class Searcher {
             final Class<?> indexManager = loader.loadClass("org.sonatype.nexus.index.DefaultIndexerManager");
             artifactInfoFilter  = loader.loadClass("org.apache.maven.index.ArtifactInfoFilter");
             classifierInfo  = loader.loadClass("org.apache.maven.index.ArtifactInfo").getField("classifier");
+            repositoryRegistry = indexManager.getDeclaredField("repositoryRegistry");
             createRequest = indexManager.getDeclaredMethod("createRequest",
                     loader.loadClass("org.apache.lucene.search.Query"),
                     Integer.class, Integer.class, Integer.class, boolean.class, List.class);
@@ -77,6 +98,8 @@ public class Searcher {
                 }
             };
             addClause = booleanQuery.getMethod("add", query, occur);
+            termRangeQuery = loader.loadClass("org.apache.lucene.search.TermRangeQuery")
+                                   .getConstructor(String.class, String.class, String.class, boolean.class, boolean.class);
             must = occur.getField("MUST").get(null);
             should = occur.getField("SHOULD").get(null);
             tooManyHits = searchResponse.getField("TOO_MANY_HITS_ITERATOR_SEARCH_RESPONSE").get(null);
@@ -89,11 +112,12 @@ public class Searcher {
             throw new IllegalStateException("Not the expected createRequest or searchIterator method in DefaultIndexerManager, " +
                     "this aspect is no more compatible with nexus", e);
         }
-        Stream.of(createRequest, searchIterator).forEach(it -> {
+        Stream.of(createRequest, searchIterator, repositoryRegistry).forEach(it -> {
             if (!it.isAccessible()) {
                 it.setAccessible(true);
             }
         });
+        flights = new SearchFlights();
     }
 
     public Object searchArtifactIterator(final Object manager,
@@ -103,32 +127,106 @@ public class Searcher {
                                          final boolean uniqueRGA, final Object searchType,
                                          final List filters) throws
             NoSuchRepositoryException {
+        plan.remove();
         if (gTerm == null && aTerm == null && vTerm == null) {
             return tooManyHits;
         }
+        final SearchCursor cursor = SearchCursor.current();
+        final Integer start = cursor == null ? from : null; // keyset paging, the cursor replaces the offset
+        return flights.execute(gTerm, aTerm, vTerm, pTerm, cTerm, repositoryId, start, count, hitLimit, uniqueRGA,
+                searchType, filters, () -> doSearch(manager, gTerm, aTerm, vTerm, pTerm, cTerm, repositoryId,
+                        start, count, hitLimit, uniqueRGA, searchType, filters, cursor));
+    }
+
+    // one uinfo (main artifact of the latest version) per groupId:artifactId instead of all their versions,
+    // taken from the contexts the search will read and preferably from the repositories the user can see
+    // (the hits of the other ones are filtered out by nexus so their versions are only a fallback)
+    private Query latestVersions(final Object manager, final String gTerm, final String aTerm, final String repositoryId,
+                                 final boolean snapshots) throws IllegalAccessException, NoSuchRepositoryException {
+        final Set<String> repositories = searchedRepositories(manager, repositoryId);
+        final List<IndexingContext> contexts = DefaultIndexingContextAspect.contexts().stream()
+                .filter(it -> repositories.contains(it.getRepositoryId()))
+                .collect(toList());
+        final Object subject = Shiro.subject();
+        final Set<String> groupArtifacts = Stream.of(aTerm.split(","))
+                .map(String::trim)
+                .filter(it -> !it.isEmpty())
+                .map(it -> gTerm + ':' + it)
+                .collect(toSet());
+        final BooleanQuery query = new BooleanQuery(); // no clause matches nothing
+        for (final String uinfo : MinimalArtifactInfoIndexCreatorAspect.LATEST_VERSIONS.resolve(
+                contexts, it -> isViewable(subject, it.getRepositoryId()), groupArtifacts, snapshots)) {
+            query.add(new TermQuery(new Term(UINFO, uinfo)), BooleanClause.Occur.SHOULD);
+        }
+        return query;
+    }
+
+    // what DefaultIndexerManager searches: the repository, the members of a group or all the searchable repositories
+    private Set<String> searchedRepositories(final Object manager, final String repositoryId)
+            throws IllegalAccessException, NoSuchRepositoryException {
+        final RepositoryRegistry registry = RepositoryRegistry.class.cast(repositoryRegistry.get(manager));
+        if (repositoryId == null) {
+            return registry.getRepositories().stream()
+                    .filter(Repository::isSearchable)
+                    .map(Repository::getId)
+                    .collect(toSet());
+        }
+        final Repository repository = registry.getRepository(repositoryId);
+        if (!repository.getRepositoryKind().isFacetAvailable(GroupRepository.class)) {
+            return singleton(repositoryId);
+        }
+        return repository.adaptToFacet(GroupRepository.class).getTransitiveMemberRepositories().stream()
+                .filter(Repository::isSearchable)
+                .map(Repository::getId)
+                .collect(toSet());
+    }
 
+    private static boolean isViewable(final Object subject, final String repositoryId) {
+        return subject == null || Shiro.isPermitted(subject, "nexus:view:repository:" + repositoryId);
+    }
+
+    /**
+     * @return the plan of the last search of the current thread, null if it was not planned (coalesced, planner disabled).
+     */
+    public String takePlan() {
+        final String current = plan.get();
+        plan.remove();
+        return current;
+    }
+
+    private Object doSearch(final Object manager,
+                            final String gTerm, final String aTerm, final String vTerm,
+                            final String pTerm, final String cTerm, final String repositoryId,
+                            final Integer from, final Integer count, final Integer hitLimit,
+                            final boolean uniqueRGA, final Object searchType,
+                            final List filters, final SearchCursor cursor) throws NoSuchRepositoryException {
         try {
-            final Object bq = booleanQueryFactory.get();
-            if (gTerm != null) {
-                addClause.invoke(bq, constructQuery.invoke(manager, groupId, gTerm, searchType), must);
-            }
-            if (aTerm != null) { // Talend: default is the same as for gTerm but we need to support multiple values
-                final Set<String> artifactIds = new HashSet<>(asList(aTerm.split(",")));
-                if (artifactIds.size() > 1) {
-                    final Object aq = booleanQueryFactory.get();
-                    for (final String it : artifactIds) {
-                        addClause.invoke(aq, constructQuery.invoke(manager, artifactId, it, searchType), should);
+            final List<SearchPlanner.Clause> clauses = new ArrayList<>();
+            final boolean latest = "LATEST".equalsIgnoreCase(vTerm);
+            if ((latest || "RELEASE".equalsIgnoreCase(vTerm)) && gTerm != null && aTerm != null) {
+                clauses.add(new SearchPlanner.Clause("latest", latestVersions(manager, gTerm, aTerm, repositoryId, latest)));
+            } else {
+                if (gTerm != null) {
+                    clauses.add(new SearchPlanner.Clause("g", Query.class.cast(constructQuery.invoke(manager, groupId, gTerm, searchType))));
+                }
+                if (aTerm != null) { // Talend: default is the same as for gTerm but we need to support multiple values
+                    final Set<String> artifactIds = new HashSet<>(asList(aTerm.split(",")));
+                    if (artifactIds.size() > 1) {
+                        final Object aq = booleanQueryFactory.get();
+                        for (final String it : artifactIds) {
+                            addClause.invoke(aq, constructQuery.invoke(manager, artifactId, it, searchType), should);
+                        }
+                        clauses.add(new SearchPlanner.Clause("a", Query.class.cast(aq)));
+                    } else {
+                        clauses.add(new SearchPlanner.Clause("a", Query.class.cast(constructQuery.invoke(manager, artifactId, aTerm, searchType))));
                     }
-                    addClause.invoke(bq, aq, must);
-                } else {
-                    addClause.invoke(bq, constructQuery.invoke(manager, artifactId, aTerm, searchType), must);
                 }
-            }
-            if (vTerm != null) {
-                addClause.invoke(bq, constructQuery.invoke(manager, version, vTerm, searchType), must);
+                if (vTerm != null) {
+                    clauses.add(new SearchPlanner.Clause("v", Query.class.cast(constructQuery.invoke(manager, version, vTerm, searchType))));
+                }
             }
             if (pTerm != null) {
-                addClause.invoke(bq, constructQuery.invoke(manager, packaging, pTerm, searchType), must);
+                clauses.add(new SearchPlanner.Clause("p", Query.class.cast(constructQuery.invoke(manager, packaging, pTerm, searchType))));
             }
             if (cTerm != null) {
                 if ("N/P".equalsIgnoreCase(cTerm)) {
@@ -144,13 +242,29 @@ public class Searcher {
                             }
                         }));
                 } else {
-                    addClause.invoke(bq, constructQuery.invoke(manager, classifier, cTerm, searchType), must);
+                    clauses.add(new SearchPlanner.Clause("c", Query.class.cast(constructQuery.invoke(manager, classifier, cTerm, searchType))));
                 }
             }
 
+            final Object bq;
+            if (SearchPlanner.ENABLED) {
+                final StringBuilder chosen = new StringBuilder();
+                bq = planner.plan(clauses, "EXACT".equals(String.valueOf(searchType)), chosen);
+                plan.set(chosen.toString());
+            } else {
+                bq = booleanQueryFactory.get();
+                for (final SearchPlanner.Clause clause : clauses) {
+                    addClause.invoke(bq, clause.getQuery(), must);
+                }
+            }
+
+            if (cursor != null && cursor.getUinfo() != null) { // inclusive since the same uinfo can be in several contexts
+                addClause.invoke(bq, termRangeQuery.newInstance(UINFO, cursor.getUinfo(), null, true, true), must);
+            }
+
             final Object request = createRequest.invoke(manager, bq, from, count, hitLimit, uniqueRGA, filters);
             return searchIterator.invoke(manager, repositoryId, request);
-        } catch (final IllegalAccessException e) {
+        } catch (final IllegalAccessException | InstantiationException e) {
             throw new IllegalStateException(e);
         } catch (final InvocationTargetException e) {
             final Throwable targetException = e.getTargetException();
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+
+/**
+ * Current security subject of the request. Shiro is not visible from the plugin at compile time
+ * so it is resolved reflectively, without it (tests) there is no security at all.
+ */
+final class Shiro {
+    private static final Method GET_SUBJECT;
+    private static final Method GET_PRINCIPAL;
+    private static final Method IS_PERMITTED;
+    private static final Method ASSOCIATE_WITH;
+    static {
+        Method subject = null;
+        Method principal = null;
+        Method permitted = null;
+        Method associate = null;
+        try {
+            final ClassLoader loader = Shiro.class.getClassLoader();
+            subject = loader.loadClass("org.apache.shiro.SecurityUtils").getMethod("getSubject");
+            final Class<?> subjectType = loader.loadClass("org.apache.shiro.subject.Subject");
+            principal = subjectType.getMethod("getPrincipal");
+            permitted = subjectType.getMethod("isPermitted", String.class);
+            associate = subjectType.getMethod("associateWith", Callable.class);
+        } catch (final Exception | LinkageError e) {
+            subject = null; // no security (tests)
+        }
+        GET_SUBJECT = subject;
+        GET_PRINCIPAL = principal;
+        IS_PERMITTED = permitted;
+        ASSOCIATE_WITH = associate;
+    }
+
+    private Shiro() {
+        // no-op
+    }
+
+    static boolean isAvailable() {
+        return GET_SUBJECT != null;
+    }
+
+    /**
+     * @return the subject of the current thread, null without shiro or security manager.
+     */
+    static Object subject() {
+        if (GET_SUBJECT == null) {
+            return null;
+        }
+        try {
+            return GET_SUBJECT.invoke(null);
+        } catch (final Exception e) { // no security manager
+            return null;
+        }
+    }
+
+    /**
+     * @return the principal of the current thread (results are filtered per user), null if there is no subject.
+     */
+    static Object principal() {
+        final Object subject = subject();
+        if (subject == null) {
+            return null;
+        }
+        try {
+            return GET_PRINCIPAL.invoke(subject);
+        } catch (final Exception e) {
+            return null;
+        }
+    }
+
+    static boolean isPermitted(final Object subject, final String permission) {
+        try {
+            return Boolean.TRUE.equals(IS_PERMITTED.invoke(subject, permission));
+        } catch (final Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the task running as the subject of the current thread (Subject.associateWith), the task itself without subject.
+     */
+    static Callable<Object> associate(final Callable<Object> task) {
+        final Object subject = subject();
+        if (subject == null) {
+            return task;
+        }
+        try {
+            @SuppressWarnings("unchecked")
+            final Callable<Object> associated = Callable.class.cast(ASSOCIATE_WITH.invoke(subject, task));
+            return associated;
+        } catch (final Exception e) {
+            return task;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import static java.util.Comparator.comparing;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.talend.nexus.customizations.monitoring.Monitoring;
+
+/**
+ * Logs the searches slower than <code>talend.nexus.customizations.search.slow.threshold</code> ms (default 1000, negative disables the log)
+ * and aggregates all the searches per fingerprint, the heaviest ones (total time) are listed by the
+ * <code>org.talend.nexus.customizations:type=SlowSearches</code> MBean.
+ */
+public class SlowSearchLog implements SlowSearchLogMBean {
+    private static final String OTHER = "(other)";
+    private static final int MAX_FINGERPRINTS = Integer.getInteger("talend.nexus.customizations.search.slow.fingerprints", 1000);
+    private static final int TOP = Integer.getInteger("talend.nexus.customizations.search.slow.top", 20);
+
+    private static final SlowSearchLog INSTANCE = new SlowSearchLog();
+    static {
+        Monitoring.register("SlowSearches", INSTANCE);
+    }
+
+    private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+    private volatile long thresholdMillis = Long.getLong("talend.nexus.customizations.search.slow.threshold", 1000);
+
+    static SlowSearchLog get() {
+        return INSTANCE;
+    }
+
+    void record(final SearchTrace trace) {
+        final long nanos = trace.getTotalNanos();
+        final long threshold = thresholdMillis;
+        final boolean slow = threshold >= 0 && nanos >= TimeUnit.MILLISECONDS.toNanos(threshold);
+        shape(trace.getFingerprint()).add(nanos, trace.getHits(), slow);
+        if (slow) {
+            getLogger().warn("[TALEND CUSTOMIZATION] Slow search ({}ms): {}", TimeUnit.NANOSECONDS.toMillis(nanos), trace);
+        }
+    }
+
+    private Shape shape(final String fingerprint) {
+        final Shape existing = shapes.get(fingerprint);
+        if (existing != null) {
+            return existing;
+        }
+        if (shapes.size() >= MAX_FINGERPRINTS) { // bounded, fingerprints come from user queries
+            return shapes.computeIfAbsent(OTHER, k -> new Shape());
+        }
+        return shapes.computeIfAbsent(fingerprint, k -> new Shape());
+    }
+
+    @Override
+    public long getThresholdMillis() {
+        return thresholdMillis;
+    }
+
+    @Override
+    public void setThresholdMillis(final long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    @Override
+    public String[] getTopFingerprints() {
+        return shapes.entrySet().stream() // totals are read once so the sort sees stable values
+                     .map(it -> new SimpleImmutableEntry<>(it.getValue().totalNanos.sum(), it.getValue().describe(it.getKey())))
+                     .sorted(comparing(SimpleImmutableEntry<Long, String>::getKey).reversed())
+                     .limit(TOP)
+                     .map(SimpleImmutableEntry::getValue)
+                     .toArray(String[]::new);
+    }
+
+    @Override
+    public void reset() {
+        shapes.clear();
+    }
+
+    private static Logger getLogger() {
+        return LoggerFactory.getLogger(SlowSearchLog.class);
+    }
+
+    private static final class Shape {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder slow = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void add(final long nanos, final long hitCount, final boolean isSlow) {
+            calls.increment();
+            totalNanos.add(nanos);
+            if (hitCount > 0) {
+                hits.add(hitCount);
+            }
+            if (isSlow) {
+                slow.increment();
+            }
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private String describe(final String fingerprint) {
+            final long count = Math.max(1, calls.sum());
+            return fingerprint
+                    + " calls=" + calls.sum()
+                    + " slow=" + slow.sum()
+                    + " totalMs=" + TimeUnit.NANOSECONDS.toMillis(totalNanos.sum())
+                    + " avgMs=" + TimeUnit.NANOSECONDS.toMillis(totalNanos.sum() / count)
+                    + " maxMs=" + TimeUnit.NANOSECONDS.toMillis(maxNanos.get())
+                    + " avgHits=" + (hits.sum() / count);
+        }
+    }
+}
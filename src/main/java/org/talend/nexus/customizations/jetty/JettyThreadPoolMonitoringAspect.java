@@ -15,9 +15,9 @@
  */
 package org.talend.nexus.customizations.jetty;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Aspect;
@@ -32,6 +32,12 @@ import com.yammer.metrics.jetty.InstrumentedQueuedThreadPool;
 
 @Aspect
 public class JettyThreadPoolMonitoringAspect {
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "talend-customization-jetty-queue-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @AfterReturning(value = "execution(com.yammer.metrics.jetty.InstrumentedQueuedThreadPool.new(com.yammer.metrics.core.MetricsRegistry)) && this(pool) && args(registry)", argNames = "pool,registry")
     public void registerJobsGauge(final InstrumentedQueuedThreadPool pool, final MetricsRegistry registry) {
         final MetricName jobsMetricName = new MetricName(QueuedThreadPool.class, "jobs", null);
@@ -39,31 +45,34 @@ public class JettyThreadPoolMonitoringAspect {
             getLogger().warn("[TALEND CUSTOMIZATION] {} already registered, skipping", jobsMetricName);
             return; // nexus included it, skip our logic
         }
+        final QueueProbe probe;
         try {
-            final Method getQueue = QueuedThreadPool.class.getDeclaredMethod("getQueue");
-            if (!getQueue.isAccessible()) {
-                getQueue.setAccessible(true);
-            }
-            registry.newGauge(QueuedThreadPool.class, "jobs", new Gauge<Integer>() {
-                @Override
-                public Integer value() {
-                    final BlockingQueue<Runnable> queue;
-                    try {
-                        queue = BlockingQueue.class.cast(getQueue.invoke(pool));
-                    } catch (final IllegalAccessException e) {
-                        getLogger().error("[TALEND CUSTOMIZATION] " + e.getMessage(), e);
-                        return -10;
-                    } catch (final InvocationTargetException e) {
-                        getLogger().error("[TALEND CUSTOMIZATION] " + e.getMessage(), e.getTargetException());
-                        return -10;
-                    }
-                    return queue == null ? 0 : queue.size();
-                }
-            });
-            getLogger().info("[TALEND CUSTOMIZATION] Registered metrics {}", jobsMetricName);
-        } catch (final NoSuchMethodException e) {
+            probe = new QueueProbe(pool, Integer.getInteger("talend.nexus.customizations.jetty.queue.window", 60));
+        } catch (final IllegalStateException | LinkageError e) {
             getLogger().error("[TALEND CUSTOMIZATION] Can't register {} metrics", jobsMetricName, e);
+            return;
         }
+        registry.newGauge(QueuedThreadPool.class, "jobs", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return probe.size();
+            }
+        });
+        registry.newGauge(QueuedThreadPool.class, "jobs-max", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return probe.rollingMax();
+            }
+        });
+        registry.newGauge(QueuedThreadPool.class, "jobs-rate", new Gauge<Double>() {
+            @Override
+            public Double value() {
+                return probe.rate();
+            }
+        });
+        final long period = Long.getLong("talend.nexus.customizations.jetty.queue.sampling", 1000);
+        SAMPLER.scheduleAtFixedRate(probe::tick, period, period, TimeUnit.MILLISECONDS);
+        getLogger().info("[TALEND CUSTOMIZATION] Registered metrics {}", jobsMetricName);
     }
 
     private Logger getLogger() {
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.jetty;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Reads the jobs queue of a {@link QueuedThreadPool} without reflection once the queue exists
+ * (it is created by the pool start and never replaced) and keeps a rolling max and a rate of change.
+ */
+class QueueProbe {
+    private static final MethodHandle GET_QUEUE;
+    static {
+        try {
+            final Method getQueue = QueuedThreadPool.class.getDeclaredMethod("getQueue");
+            if (!getQueue.isAccessible()) {
+                getQueue.setAccessible(true);
+            }
+            GET_QUEUE = MethodHandles.lookup().unreflect(getQueue);
+        } catch (final NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("QueuedThreadPool.getQueue() not found, jetty is no more compatible", e);
+        }
+    }
+
+    private final QueuedThreadPool pool;
+    private volatile BlockingQueue<?> queue;
+
+    // rolling max, one slot per second
+    private final long[] slotSeconds;
+    private final int[] slotMax;
+
+    // rate of change between two ticks
+    private long lastTickNanos;
+    private int lastTickSize;
+    private volatile double rate;
+
+    QueueProbe(final QueuedThreadPool pool, final int windowSeconds) {
+        this.pool = pool;
+        this.slotSeconds = new long[Math.max(1, windowSeconds)];
+        this.slotMax = new int[slotSeconds.length];
+    }
+
+    int size() {
+        final BlockingQueue<?> q = queue();
+        return q == null ? 0 : q.size();
+    }
+
+    synchronized int rollingMax() {
+        update(size());
+        final long now = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        int max = 0;
+        for (int i = 0; i < slotSeconds.length; i++) {
+            if (now - slotSeconds[i] < slotSeconds.length) {
+                max = Math.max(max, slotMax[i]);
+            }
+        }
+        return max;
+    }
+
+    double rate() {
+        return rate;
+    }
+
+    synchronized void tick() {
+        final int size = size();
+        final long now = System.nanoTime();
+        update(size);
+        if (lastTickNanos != 0 && now > lastTickNanos) {
+            rate = (size - lastTickSize) * (double) TimeUnit.SECONDS.toNanos(1) / (now - lastTickNanos);
+        }
+        lastTickNanos = now;
+        lastTickSize = size;
+    }
+
+    private void update(final int size) {
+        final long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        final int slot = (int) Math.floorMod(second, (long) slotSeconds.length);
+        if (slotSeconds[slot] != second) {
+            slotSeconds[slot] = second;
+            slotMax[slot] = size;
+        } else if (slotMax[slot] < size) {
+            slotMax[slot] = size;
+        }
+    }
+
+    private BlockingQueue<?> queue() {
+        BlockingQueue<?> q = queue;
+        if (q == null) { // not yet started
+            try {
+                q = (BlockingQueue<?>) GET_QUEUE.invokeExact(pool);
+            } catch (final RuntimeException | Error e) {
+                throw e;
+            } catch (final Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            queue = q;
+        }
+        return q;
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.monitoring;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram (8 sub-buckets per power of 2, so ~12% precision) recorded per thread
+ * and merged only when read, writers never contend.
+ * Recorders of terminated threads are folded into a shared base so jetty thread churn does not accumulate them.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 << SUB_BUCKET_BITS;
+
+    private final Queue<Recorder> recorders = new ConcurrentLinkedQueue<>();
+    private final long[] base = new long[BUCKETS]; // guarded by this
+    private long baseCalls; // guarded by this
+    private final ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(() -> {
+        final Recorder recorder = new Recorder(Thread.currentThread());
+        expunge(); // a new thread is a good hint another one may have died
+        recorders.add(recorder);
+        return recorder;
+    });
+
+    public Recorder recorder() {
+        return recorder.get();
+    }
+
+    public synchronized void reset() {
+        baseCalls = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            base[i] = 0;
+        }
+        recorders.forEach(Recorder::reset);
+    }
+
+    public synchronized Snapshot snapshot() {
+        expunge();
+        final long[] merged = base.clone();
+        long calls = baseCalls;
+        long samples = 0;
+        for (final long value : merged) {
+            samples += value;
+        }
+        for (final Recorder it : recorders) {
+            calls += it.calls.get();
+            for (int i = 0; i < BUCKETS; i++) {
+                final long value = it.buckets.get(i);
+                merged[i] += value;
+                samples += value;
+            }
+        }
+        return new Snapshot(calls, samples, merged);
+    }
+
+    /**
+     * @return the number of per thread recorders still referenced, dead threads excluded once expunged.
+     */
+    public synchronized int getRecorderCount() {
+        expunge();
+        return recorders.size();
+    }
+
+    private synchronized void expunge() {
+        final Iterator<Recorder> iterator = recorders.iterator();
+        while (iterator.hasNext()) {
+            final Recorder it = iterator.next();
+            if (it.isAlive()) {
+                continue;
+            }
+            // Thread.isAlive() returning false happens-after all the owner writes, folding is exact
+            iterator.remove();
+            baseCalls += it.calls.get();
+            for (int i = 0; i < BUCKETS; i++) {
+                base[i] += it.buckets.get(i);
+            }
+        }
+    }
+
+    static int bucket(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long lowerBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        return ((long) (SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1)))) << shift;
+    }
+
+    /**
+     * Only written by its owner thread so ordered (lazy) writes are enough.
+     */
+    public static final class Recorder {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final WeakReference<Thread> owner;
+        private int tick;
+
+        private Recorder(final Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        private boolean isAlive() {
+            final Thread thread = owner.get();
+            return thread != null && thread.isAlive();
+        }
+
+        /**
+         * @param samplingRate one call out of samplingRate is timed.
+         * @return true if the current call must be timed.
+         */
+        public boolean count(final int samplingRate) {
+            calls.lazySet(calls.get() + 1);
+            if (++tick >= samplingRate) {
+                tick = 0;
+                return true;
+            }
+            return false;
+        }
+
+        public void record(final long value) {
+            final int bucket = bucket(value);
+            buckets.lazySet(bucket, buckets.get(bucket) + 1);
+        }
+
+        private void reset() { // racy with the owner but only used to restart a measurement campaign
+            calls.set(0);
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+
+    public static final class Snapshot {
+        private final long calls;
+        private final long samples;
+        private final long[] buckets;
+
+        private Snapshot(final long calls, final long samples, final long[] buckets) {
+            this.calls = calls;
+            this.samples = samples;
+            this.buckets = buckets;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public long percentile(final double percentile) {
+            if (samples == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(samples * percentile));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return lowerBound(i);
+                }
+            }
+            return lowerBound(buckets.length - 1);
+        }
+    }
+}
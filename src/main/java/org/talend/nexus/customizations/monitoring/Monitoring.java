@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.monitoring;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single entry point used by the customizations to expose their metrics.
+ * Gauges go to the yammer default registry (which is exported on JMX by its reporter) when it is visible
+ * from the current classloader, otherwise - typically in a Felix bundle - to a plain JMX MBean per type.
+ */
+public final class Monitoring {
+    public static final String GROUP = "org.talend.nexus.customizations";
+
+    private static final boolean YAMMER = isYammerAvailable();
+
+    private static final Map<String, GaugesMBean> FALLBACK_MBEANS = new ConcurrentHashMap<>();
+
+    private Monitoring() {
+        // no-op
+    }
+
+    public static void gauge(final String type, final String name, final Supplier<? extends Number> value) {
+        try {
+            if (YAMMER) {
+                Yammer.gauge(type, name, value);
+            } else {
+                FALLBACK_MBEANS.computeIfAbsent(type, t -> {
+                    final GaugesMBean mbean = new GaugesMBean();
+                    register(t, mbean);
+                    return mbean;
+                }).gauges.putIfAbsent(name, value);
+            }
+        } catch (final RuntimeException | LinkageError e) {
+            getLogger().warn("[TALEND CUSTOMIZATION] Can't register gauge {}.{}: {}", type, name, e.getMessage());
+        }
+    }
+
+    public static void register(final String type, final Object mbean) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(GROUP + ":type=" + type);
+            server.registerMBean(mbean, name);
+        } catch (final InstanceAlreadyExistsException iaee) {
+            // already registered by another classloader, keep the first one
+        } catch (final Exception e) {
+            getLogger().warn("[TALEND CUSTOMIZATION] Can't register MBean {}: {}", type, e.getMessage());
+        }
+    }
+
+    private static boolean isYammerAvailable() {
+        try {
+            Class.forName("com.yammer.metrics.Metrics", false, Monitoring.class.getClassLoader());
+            return true;
+        } catch (final ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Logger getLogger() {
+        return LoggerFactory.getLogger(Monitoring.class);
+    }
+
+    // isolated to not load yammer classes when they are not visible
+    private static final class Yammer {
+        private Yammer() {
+            // no-op
+        }
+
+        private static void gauge(final String type, final String name, final Supplier<? extends Number> value) {
+            com.yammer.metrics.Metrics.defaultRegistry().newGauge(
+                    new com.yammer.metrics.core.MetricName(GROUP, type, name),
+                    new com.yammer.metrics.core.Gauge<Number>() {
+                        @Override
+                        public Number value() {
+                            return value.get();
+                        }
+                    });
+        }
+    }
+
+    private static final class GaugesMBean implements DynamicMBean {
+        private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+        @Override
+        public Object getAttribute(final String attribute) {
+            final Supplier<? extends Number> gauge = gauges.get(attribute);
+            return gauge == null ? null : gauge.get();
+        }
+
+        @Override
+        public void setAttribute(final Attribute attribute) {
+            throw new UnsupportedOperationException("read-only");
+        }
+
+        @Override
+        public AttributeList getAttributes(final String[] attributes) {
+            final AttributeList list = new AttributeList();
+            for (final String attribute : attributes) {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(final AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(final String actionName, final Object[] params, final String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            return new MBeanInfo(GaugesMBean.class.getName(), "Talend customization gauges",
+                    gauges.keySet().stream()
+                          .sorted()
+                          .map(it -> new MBeanAttributeInfo(it, Number.class.getName(), it, true, false, false))
+                          .toArray(MBeanAttributeInfo[]::new),
+                    null, null, null);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.monitoring;
+
+import static java.util.Comparator.comparing;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aspectj.lang.JoinPoint;
+
+/**
+ * Keeps one histogram per profiled join point, see {@link ProfilingAspect}.
+ * Published as gauges (<code>&lt;join point&gt;.count</code>, <code>.p50</code>, <code>.p99</code> in nanoseconds)
+ * and controllable through the <code>org.talend.nexus.customizations:type=Profiler</code> MBean.
+ */
+public class Profiler implements ProfilerMBean {
+    private static final Profiler INSTANCE = new Profiler();
+    static {
+        Monitoring.register("Profiler", INSTANCE);
+    }
+
+    private final Map<JoinPoint.StaticPart, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> byName = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled = Boolean.getBoolean("talend.nexus.customizations.profiling");
+    private volatile int samplingRate = Math.max(1, Integer.getInteger("talend.nexus.customizations.profiling.sampling", 8));
+
+    public static Profiler get() {
+        return INSTANCE;
+    }
+
+    public LatencyHistogram histogram(final JoinPoint.StaticPart joinPoint) {
+        final LatencyHistogram existing = histograms.get(joinPoint);
+        if (existing != null) {
+            return existing;
+        }
+        return histograms.computeIfAbsent(joinPoint, jp -> {
+            final String name = jp.getSignature().getDeclaringType().getSimpleName() + "." + jp.getSignature().getName();
+            final LatencyHistogram histogram = byName.computeIfAbsent(name, n -> {
+                final LatencyHistogram created = new LatencyHistogram();
+                Monitoring.gauge("Profiler", n + ".count", () -> created.snapshot().getCalls());
+                Monitoring.gauge("Profiler", n + ".p50", () -> created.snapshot().percentile(.5));
+                Monitoring.gauge("Profiler", n + ".p99", () -> created.snapshot().percentile(.99));
+                return created;
+            });
+            return histogram;
+        });
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+
+    @Override
+    public void setSamplingRate(final int samplingRate) {
+        this.samplingRate = Math.max(1, samplingRate);
+    }
+
+    @Override
+    public void reset() {
+        byName.values().forEach(LatencyHistogram::reset);
+    }
+
+    @Override
+    public String report() {
+        final StringBuilder report = new StringBuilder();
+        byName.entrySet().stream().sorted(comparing(Map.Entry::getKey)).forEach(e -> {
+            final LatencyHistogram.Snapshot snapshot = e.getValue().snapshot();
+            report.append(e.getKey())
+                  .append(": count=").append(snapshot.getCalls())
+                  .append(", samples=").append(snapshot.getSamples())
+                  .append(", p50=").append(snapshot.percentile(.5)).append("ns")
+                  .append(", p99=").append(snapshot.percentile(.99)).append("ns\n");
+        });
+        return report.toString();
+    }
+}
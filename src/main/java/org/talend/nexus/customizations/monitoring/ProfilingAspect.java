@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.monitoring;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+/**
+ * Woven at build time (ajc) around the advices of the other customization aspects.
+ * Disabled by default (<code>-Dtalend.nexus.customizations.profiling=true</code> or JMX to enable it),
+ * when enabled all calls are counted but only one out of
+ * <code>talend.nexus.customizations.profiling.sampling</code> (default 8) is timed.
+ */
+@Aspect
+public class ProfilingAspect {
+    @Around("adviceexecution() && within(org.talend.nexus.customizations..*) && !within(org.talend.nexus.customizations.monitoring..*)")
+    public Object profile(final ProceedingJoinPoint joinPoint) throws Throwable {
+        final Profiler profiler = Profiler.get();
+        if (!profiler.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        final LatencyHistogram.Recorder recorder = profiler.histogram(joinPoint.getStaticPart()).recorder();
+        if (!recorder.count(profiler.getSamplingRate())) {
+            return joinPoint.proceed();
+        }
+        final long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            recorder.record(System.nanoTime() - start);
+        }
+    }
+}
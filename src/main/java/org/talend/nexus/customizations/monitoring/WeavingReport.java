@@ -0,0 +1,339 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.monitoring;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wraps the preprocessor of the aspectj agent transformer to know, per classloader, how many classes are inspected, woven and
+ * how long it takes. The report is logged once the weaving is quiet (no class transformed during
+ * <code>talend.nexus.customizations.weaving.report.quietPeriod</code> seconds) and always readable through the
+ * <code>org.talend.nexus.customizations:type=WeavingReport</code> MBean.
+ * In strict mode (<code>talend.nexus.customizations.weaving.report.strict</code>) the aop.xml includes which never
+ * matched a woven class and the classloaders where nothing was woven are reported as warnings.
+ */
+public class WeavingReport implements WeavingReportMBean {
+    // the aspects can be loaded by several classloaders (main, webapp, bundles), only one must wrap the agent
+    private static final String INSTALLED = "talend.nexus.customizations.weaving.report.installed";
+
+    private static final Pattern WITHIN = Pattern.compile("within=\"([^\"]+)\"");
+
+    private static final int SLOWEST = 10;
+
+    private final Map<ClassLoader, LoaderStats> loaders = Collections.synchronizedMap(new WeakHashMap<>());
+    private final LoaderStats bootstrap = new LoaderStats("bootstrap");
+    private final Set<String> wovenTypes = ConcurrentHashMap.newKeySet();
+    private final long quietPeriod = TimeUnit.SECONDS.toNanos(
+            Integer.getInteger("talend.nexus.customizations.weaving.report.quietPeriod", 60));
+    private final boolean strict = Boolean.getBoolean("talend.nexus.customizations.weaving.report.strict");
+    private volatile long lastTransform = System.nanoTime();
+
+    public static void install() {
+        if (!Boolean.parseBoolean(System.getProperty("talend.nexus.customizations.weaving.report", "true"))
+                || System.getProperties().putIfAbsent(INSTALLED, "true") != null) {
+            return;
+        }
+        try {
+            // the agent transformer stays registered (removing it, even briefly, would let concurrently loaded classes
+            // unwoven and move it at the end of the chain), only the preprocessor it delegates to is wrapped,
+            // a single reference swap so each class is woven by the previous or the timing preprocessor
+            final Class<?> adapter = Class.forName("org.aspectj.weaver.loadtime.ClassPreProcessorAgentAdapter", false,
+                    ClassLoader.getSystemClassLoader());
+            final Field preProcessorField = adapter.getDeclaredField("classPreProcessor");
+            if (!preProcessorField.isAccessible()) {
+                preProcessorField.setAccessible(true);
+            }
+            final Object preProcessor = preProcessorField.get(null);
+            if (preProcessor == null) { // agent not initialized, nothing to observe
+                return;
+            }
+
+            // the ClassPreProcessor type is the one of the agent loader, not always the one visible from this class
+            final WeavingReport report = new WeavingReport();
+            final Class<?> api = preProcessorField.getType();
+            preProcessorField.set(null, Proxy.newProxyInstance(api.getClassLoader(), new Class<?>[] { api },
+                    report.new TimingPreProcessor(preProcessor)));
+            Monitoring.register("WeavingReport", report);
+            report.scheduleReport();
+        } catch (final Exception | LinkageError e) { // no agent (build time weaving) or another agent version
+            getLogger().debug("[TALEND CUSTOMIZATION] Weaving report not available: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public long getInspectedClasses() {
+        return stats().stream().mapToLong(it -> it.inspected.sum()).sum();
+    }
+
+    @Override
+    public long getWovenClasses() {
+        return stats().stream().mapToLong(it -> it.woven.sum()).sum();
+    }
+
+    @Override
+    public long getWeavingTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(stats().stream().mapToLong(it -> it.nanos.sum()).sum());
+    }
+
+    @Override
+    public String report() {
+        final StringBuilder report = new StringBuilder("Weaving: inspected=").append(getInspectedClasses())
+                .append(", woven=").append(getWovenClasses())
+                .append(", time=").append(getWeavingTimeMillis()).append("ms\n");
+        stats().stream()
+               .sorted(comparing((LoaderStats it) -> it.nanos.sum()).reversed())
+               .forEach(it -> {
+                   report.append("  ").append(it.name)
+                         .append(": inspected=").append(it.inspected.sum())
+                         .append(", woven=").append(it.woven.sum())
+                         .append(", time=").append(TimeUnit.NANOSECONDS.toMillis(it.nanos.sum())).append("ms");
+                   final List<TypeTime> slowest = it.slowest();
+                   if (!slowest.isEmpty()) {
+                       report.append(", slowest=").append(slowest.stream()
+                               .map(type -> type.name + "(" + TimeUnit.NANOSECONDS.toMicros(type.nanos) + "us)")
+                               .collect(toList()));
+                   }
+                   report.append('\n');
+               });
+        return report.toString();
+    }
+
+    private List<String> warnings() {
+        final List<String> warnings = new ArrayList<>();
+        for (final String include : includes()) {
+            final Pattern pattern = toPattern(include);
+            if (wovenTypes.stream().noneMatch(type -> pattern.matcher(type).matches())) {
+                warnings.add("aop.xml include '" + include + "' did not match any woven class, it only adds scanning");
+            }
+        }
+        stats().stream()
+               .filter(it -> it.inspected.sum() > 0 && it.woven.sum() == 0)
+               .forEach(it -> warnings.add("Classloader " + it.name + " had " + it.inspected.sum()
+                       + " classes inspected but none woven"));
+        return warnings;
+    }
+
+    private void scheduleReport() {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "talend-weaving-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long checkPeriod = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(quietPeriod) / 4);
+        scheduler.scheduleWithFixedDelay(() -> {
+            if (System.nanoTime() - lastTransform < quietPeriod) {
+                return;
+            }
+            final Logger logger = getLogger();
+            logger.info("[TALEND CUSTOMIZATION] {}", report());
+            if (strict) {
+                warnings().forEach(it -> logger.warn("[TALEND CUSTOMIZATION] {}", it));
+            }
+            scheduler.shutdown();
+        }, checkPeriod, checkPeriod, TimeUnit.SECONDS);
+    }
+
+    private Collection<LoaderStats> stats() {
+        final List<LoaderStats> stats;
+        synchronized (loaders) {
+            stats = new ArrayList<>(loaders.values());
+        }
+        stats.add(bootstrap);
+        return stats;
+    }
+
+    private LoaderStats stats(final ClassLoader loader) {
+        if (loader == null) {
+            return bootstrap;
+        }
+        synchronized (loaders) {
+            return loaders.computeIfAbsent(loader, l -> new LoaderStats(l.getClass().getSimpleName() + "[" + l + "]"));
+        }
+    }
+
+    private Set<String> includes() {
+        final Set<String> includes = new LinkedHashSet<>();
+        try {
+            final Enumeration<URL> aopXml = WeavingReport.class.getClassLoader().getResources("META-INF/aop.xml");
+            while (aopXml.hasMoreElements()) {
+                try (final InputStream stream = aopXml.nextElement().openStream()) {
+                    final Matcher matcher = WITHIN.matcher(new String(readAll(stream), StandardCharsets.UTF_8));
+                    while (matcher.find()) {
+                        includes.add(matcher.group(1));
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            getLogger().debug("[TALEND CUSTOMIZATION] Can't read aop.xml: {}", e.getMessage());
+        }
+        return includes;
+    }
+
+    // aspectj type pattern to regex, enough for the includes we use (names, * and ..)
+    private static Pattern toPattern(final String typePattern) {
+        final StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < typePattern.length(); i++) {
+            final char c = typePattern.charAt(i);
+            if (c == '.' && i + 1 < typePattern.length() && typePattern.charAt(i + 1) == '.') {
+                regex.append("\\.(.*\\.)?");
+                i++;
+            } else if (c == '.') {
+                regex.append("\\.");
+            } else if (c == '*') {
+                regex.append("[^.]*");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static byte[] readAll(final InputStream stream) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = stream.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static Logger getLogger() {
+        return LoggerFactory.getLogger(WeavingReport.class);
+    }
+
+    // ClassPreProcessor.preProcess(String className, byte[] bytes, ClassLoader loader, ProtectionDomain domain)
+    private final class TimingPreProcessor implements InvocationHandler {
+        private final Object delegate;
+
+        private TimingPreProcessor(final Object delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "TimingPreProcessor[" + delegate + "]";
+                }
+            }
+            if (!"preProcess".equals(method.getName())) {
+                return invokeDelegate(method, args);
+            }
+            final long start = System.nanoTime();
+            final Object result = invokeDelegate(method, args);
+            final long end = System.nanoTime();
+            lastTransform = end;
+            final String className = String.class.cast(args[0]);
+            final boolean woven = result != null && result != args[1];
+            final String type = className == null ? "<anonymous>" : className.replace('/', '.').replace('$', '.');
+            stats(ClassLoader.class.cast(args[2])).record(type, woven, end - start);
+            if (woven) {
+                wovenTypes.add(type);
+            }
+            return result;
+        }
+
+        private Object invokeDelegate(final Method method, final Object[] args) throws Throwable {
+            try {
+                return method.invoke(delegate, args);
+            } catch (final InvocationTargetException ite) {
+                throw ite.getTargetException();
+            }
+        }
+    }
+
+    private static final class LoaderStats {
+        private final String name;
+        private final LongAdder inspected = new LongAdder();
+        private final LongAdder woven = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final PriorityQueue<TypeTime> slowest = new PriorityQueue<>(comparing((TypeTime it) -> it.nanos));
+
+        private LoaderStats(final String name) {
+            this.name = name;
+        }
+
+        private void record(final String type, final boolean woven, final long duration) {
+            inspected.increment();
+            if (woven) {
+                this.woven.increment();
+            }
+            nanos.add(duration);
+            synchronized (slowest) {
+                if (slowest.size() < SLOWEST) {
+                    slowest.add(new TypeTime(type, duration));
+                } else if (slowest.peek().nanos < duration) {
+                    slowest.poll();
+                    slowest.add(new TypeTime(type, duration));
+                }
+            }
+        }
+
+        private List<TypeTime> slowest() {
+            synchronized (slowest) {
+                return slowest.stream().sorted(comparing((TypeTime it) -> it.nanos).reversed()).collect(toList());
+            }
+        }
+    }
+
+    private static final class TypeTime {
+        private final String name;
+        private final long nanos;
+
+        private TypeTime(final String name, final long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+    }
+}
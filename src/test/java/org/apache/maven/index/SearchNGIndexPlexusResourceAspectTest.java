@@ -21,41 +21,71 @@ import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermRangeQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.maven.index.context.IndexingContext;
 import org.apache.maven.index.context.NexusIndexMultiReader;
 import org.apache.maven.index.context.NexusIndexMultiSearcher;
 import org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
 import org.eclipse.sisu.inject.DefaultBeanLocator;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.restlet.Context;
+import org.restlet.data.Method;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.resource.OutputRepresentation;
+import org.restlet.resource.Representation;
+import org.restlet.resource.ResourceException;
 import org.restlet.resource.Variant;
 import org.sonatype.nexus.configuration.application.runtime.DefaultApplicationRuntimeConfigurationBuilder;
+import org.sonatype.nexus.index.DefaultIndexerManager;
+import org.sonatype.nexus.index.IndexArtifactFilter;
 import org.sonatype.nexus.index.NexusIndexingContext;
 import org.sonatype.nexus.proxy.registry.DefaultRepositoryRegistry;
 import org.sonatype.nexus.proxy.registry.DefaultRepositoryTypeRegistry;
 import org.sonatype.nexus.rest.indexng.SearchNGIndexPlexusResource;
+import org.sonatype.nexus.rest.model.NexusNGArtifact;
 import org.sonatype.nexus.rest.model.SearchNGResponse;
 import org.sonatype.sisu.goodies.eventbus.internal.DefaultEventBus;
 import org.sonatype.sisu.goodies.eventbus.internal.ReentrantGuavaEventBus;
 import org.talend.nexus.customizations.indexing.LoadedByReflection;
+import org.talend.nexus.customizations.indexing.SearchCursor;
 import org.talend.nexus.customizations.indexing.SearchNGIndexPlexusResourceAspect;
 
 @DisplayName("Ensure responses of the search are enriched with custom fields")
 class SearchNGIndexPlexusResourceAspectTest {
+    // see SearchETags.TAG_ATTRIBUTE
+    private static final String ETAG_ATTRIBUTE = "org.talend.nexus.customizations.search.etag";
+
     @Test
     @DisplayName("Search and validates we have license/licenseUrl/url")
     void search() throws IOException {
@@ -103,6 +133,232 @@ class SearchNGIndexPlexusResourceAspectTest {
                 .collect(toList()));
     }
 
+    @Test
+    @DisplayName("Export all the artifacts as NDJSON and resume from a checkpoint")
+    void export() throws Exception {
+        LoadedByReflection.init(Thread.currentThread().getContextClassLoader());
+
+        final IndexingContext context = newContext("export", "foo", "bar");
+        try {
+            final SearchNGIndexPlexusResource resource = new SearchNGIndexPlexusResource(emptyList());
+            final List<String> lines = asUser(it -> true, () -> export(resource, "http://localhost/service/local/lucene/search?export=ndjson"));
+            assertEquals(2, lines.size());
+            assertTrue(lines.get(0).startsWith("{\"repository\":\"export\",\"groupId\":\"test\",\"artifactId\":\"bar\",\"version\":\"1.2.3\","), lines.get(0));
+            assertTrue(lines.get(0).contains("\"url\":\"http://fake\",\"license\":\"bar license\",\"licenseUrl\":\"http://bar\"," +
+                    "\"checkpoint\":\"export|test|bar|1.2.3|jar\"}"), lines.get(0));
+            assertTrue(lines.get(1).contains("\"artifactId\":\"foo\""), lines.get(1));
+
+            final List<String> resumed = asUser(it -> true, () -> export(resource,
+                    "http://localhost/service/local/lucene/search?export=ndjson&checkpoint=export%7Ctest%7Cbar%7C1.2.3%7Cjar"));
+            assertEquals(singletonList(lines.get(1)), resumed);
+        } finally {
+            context.close(true);
+        }
+    }
+
+    @Test
+    @DisplayName("Export skips the artifacts the user can't read in a repository it can view, like the search")
+    void exportTargets() throws Exception {
+        LoadedByReflection.init(Thread.currentThread().getContextClassLoader());
+
+        final IndexingContext context = newContext("export", "foo", "bar");
+        try {
+            final SearchNGIndexPlexusResource resource = new SearchNGIndexPlexusResource(emptyList());
+            final List<String> lines = asUser(
+                    it -> it.equals("nexus:view:repository:export") || it.equals("nexus:target:foo:export:read"),
+                    () -> export(resource, "http://localhost/service/local/lucene/search?export=ndjson"));
+            assertEquals(1, lines.size());
+            assertTrue(lines.get(0).contains("\"artifactId\":\"foo\""), lines.get(0));
+        } finally {
+            context.close(true);
+        }
+    }
+
+    @Test
+    @DisplayName("Keyset paging walks the hits in uinfo order, skips the ties already returned and ends without an empty page")
+    void keysetPaging() throws Exception {
+        LoadedByReflection.init(Thread.currentThread().getContextClassLoader());
+
+        // same uinfo in both contexts for b and c: ties which can be split between two pages
+        final List<IndexingContext> contexts = asList(newContext("keyset1", "a", "b", "c", "d"), newContext("keyset2", "b", "c"));
+        try {
+            final SearchNGIndexPlexusResource resource = keysetResource(contexts, 2);
+
+            final List<List<String>> pages = new ArrayList<>();
+            String cursor = "";
+            do {
+                final SearchNGResponse response = SearchNGResponse.class.cast(resource.get(null,
+                        new Request(Method.GET, "http://localhost/service/local/lucene/search?g=test&cursor=" + cursor), null, null));
+                pages.add(response.getData().stream().map(NexusNGArtifact::getArtifactId).sorted().collect(toList()));
+                cursor = SearchNGIndexPlexusResourceAspect.ExtendedSearchNGResponse.class.cast(response).getCursor();
+            } while (cursor != null && pages.size() < 10);
+
+            // a, b (keyset1) | b (keyset2), c (keyset1) | c (keyset2), d: no hit twice, no empty last page
+            assertEquals(asList(asList("a", "b"), asList("b", "c"), asList("c", "d")), pages);
+        } finally {
+            for (final IndexingContext context : contexts) {
+                context.close(true);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("A keyset page without count is not empty")
+    void keysetPagingWithoutCount() throws Exception {
+        LoadedByReflection.init(Thread.currentThread().getContextClassLoader());
+
+        final List<IndexingContext> contexts = singletonList(newContext("keyset3", "a", "b", "c"));
+        try {
+            final SearchNGResponse response = SearchNGResponse.class.cast(keysetResource(contexts, -1).get(null,
+                    new Request(Method.GET, "http://localhost/service/local/lucene/search?g=test&cursor="), null, null));
+            assertEquals(asList("a", "b", "c"), response.getData().stream().map(NexusNGArtifact::getArtifactId).sorted().collect(toList()));
+            assertNull(SearchNGIndexPlexusResourceAspect.ExtendedSearchNGResponse.class.cast(response).getCursor());
+        } finally {
+            contexts.get(0).close(true);
+        }
+    }
+
+    @Test
+    @DisplayName("An invalid cursor is a bad request")
+    void invalidCursor() {
+        final ResourceException error = assertThrows(ResourceException.class, () -> new SearchNGIndexPlexusResource(emptyList())
+                .get(null, new Request(Method.GET, "http://localhost/service/local/lucene/search?g=test&cursor=%21%21"), null, null));
+        assertEquals(Status.CLIENT_ERROR_BAD_REQUEST, error.getStatus());
+    }
+
+    @Test
+    @DisplayName("An unchanged search gets a bodiless 304 with its tag until an index commit")
+    void etag() throws IOException {
+        final IndexingContext context = newContext("etag", "a");
+        try {
+            final AtomicInteger searches = new AtomicInteger();
+            final SearchNGIndexPlexusResource resource = new SearchNGIndexPlexusResource(emptyList()) {
+                @Override
+                public SearchNGResponse get(final Context context, final Request request,
+                                            final Response response, final Variant variant) {
+                    searches.incrementAndGet();
+                    return new SearchNGResponse();
+                }
+            };
+            final String uri = "http://localhost/service/local/lucene/search?g=test&a=b,a";
+
+            final Request first = new Request(Method.GET, uri);
+            final Response firstResponse = new Response(first);
+            assertTrue(SearchNGResponse.class.isInstance(resource.get(null, first, firstResponse, null)));
+            assertEquals(Status.SUCCESS_OK, firstResponse.getStatus());
+            final Object tag = first.getAttributes().get(ETAG_ATTRIBUTE); // set on the payload by SearchETagAspect
+            assertTrue(String.class.isInstance(tag));
+
+            final Request conditional = conditional("http://localhost/service/local/lucene/search?a=a,b&g=test", tag);
+            final Response notModified = new Response(conditional);
+            final Representation entity = Representation.class.cast(resource.get(null, conditional, notModified, null));
+            assertEquals(Status.REDIRECTION_NOT_MODIFIED, notModified.getStatus());
+            assertEquals(tag, entity.getTag().getName());
+            assertEquals(0, entity.getSize());
+            assertEquals(1, searches.get());
+
+            context.getIndexWriter().addDocument(newDoc("b"));
+            context.commit();
+            final Request afterCommit = conditional(uri, tag);
+            final Response modified = new Response(afterCommit);
+            assertTrue(SearchNGResponse.class.isInstance(resource.get(null, afterCommit, modified, null)));
+            assertEquals(Status.SUCCESS_OK, modified.getStatus());
+            assertEquals(2, searches.get());
+            assertNotEquals(tag, afterCommit.getAttributes().get(ETAG_ATTRIBUTE));
+        } finally {
+            context.close(true);
+        }
+    }
+
+    private SearchNGIndexPlexusResource keysetResource(final List<IndexingContext> contexts, final int count) {
+        return new SearchNGIndexPlexusResource(emptyList()) {
+            {
+                final DefaultEventBus bus = new DefaultEventBus(new ReentrantGuavaEventBus());
+                final DefaultRepositoryTypeRegistry defaultRepositoryTypeRegistry = new DefaultRepositoryTypeRegistry(
+                        new HashMap<>(), new DefaultApplicationRuntimeConfigurationBuilder(new DefaultBeanLocator()));
+                super.setDefaultRepositoryRegistry(new DefaultRepositoryRegistry(bus, defaultRepositoryTypeRegistry));
+            }
+
+            @Override // what DefaultSearchEngine does with the range clause of the Searcher, the scored search is skipped
+            public SearchNGResponse get(final Context context, final Request request,
+                                        final Response response, final Variant variant) {
+                try {
+                    final SearchCursor cursor = SearchCursor.current();
+                    final Query query = new TermRangeQuery("u", cursor.getUinfo(), null, true, true);
+                    final NexusIndexMultiSearcher indexSearcher = new NexusIndexMultiSearcher(new NexusIndexMultiReader(contexts));
+                    final IteratorSearchRequest searchRequest = new IteratorSearchRequest(query);
+                    if (count > 0) {
+                        searchRequest.setCount(count);
+                    }
+                    final TopDocs hits = new TopDocs(0, new ScoreDoc[0], Float.NaN);
+                    final IteratorResultSet resultSet = new DefaultIteratorResultSet(searchRequest, indexSearcher, contexts, hits);
+                    return packSearchNGResponse(request, emptyMap(), new IteratorSearchResponse(query, hits.totalHits, resultSet), false);
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    // a user with the given permissions and an indexer manager whose artifact filter checks a read target per artifact
+    // (what DefaultIndexArtifactFilter does through NexusItemAuthorizer.authorizePath)
+    private <T> T asUser(final Predicate<String> permissions, final Callable<T> task) throws Exception {
+        final Subject subject = Subject.class.cast(Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
+                new Class<?>[]{Subject.class}, (proxy, method, args) -> {
+                    if ("isPermitted".equals(method.getName()) && args.length == 1 && String.class.isInstance(args[0])) {
+                        return permissions.test(String.class.cast(args[0]));
+                    }
+                    if ("getPrincipal".equals(method.getName())) {
+                        return "export-user";
+                    }
+                    throw new UnsupportedOperationException(method.toString());
+                }));
+        final DefaultIndexerManager manager = new DefaultIndexerManager(); // captured by DefaultIndexerManagerAspect
+        final Field filter = DefaultIndexerManager.class.getDeclaredField("indexArtifactFilter");
+        filter.setAccessible(true);
+        filter.set(manager, Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
+                new Class<?>[]{IndexArtifactFilter.class}, (proxy, method, args) -> {
+                    if ("filterArtifactInfo".equals(method.getName())) {
+                        final ArtifactInfo info = ArtifactInfo.class.cast(args[0]);
+                        return subject.isPermitted("nexus:view:repository:" + info.repository) &&
+                                subject.isPermitted("nexus:target:" + info.artifactId + ':' + info.repository + ":read");
+                    }
+                    throw new UnsupportedOperationException(method.toString());
+                }));
+        ThreadContext.bind(subject);
+        try {
+            return task.call();
+        } finally {
+            ThreadContext.unbindSubject();
+        }
+    }
+
+    private Request conditional(final String uri, final Object tag) {
+        final Request request = new Request(Method.GET, uri);
+        request.getConditions().setNoneMatch(singletonList(new Tag(String.valueOf(tag), false)));
+        return request;
+    }
+
+    private IndexingContext newContext(final String repository, final String... artifacts) throws IOException {
+        final IndexingContext context = new NexusIndexingContext(
+                repository, repository, new File("target/repo"), new RAMDirectory(), null, null,
+                singletonList(new MinimalArtifactInfoIndexCreator()), false, false);
+        for (final String artifact : artifacts) {
+            context.getIndexWriter().addDocument(newDoc(artifact));
+        }
+        context.commit();
+        return context;
+    }
+
+    private List<String> export(final SearchNGIndexPlexusResource resource, final String uri) throws IOException {
+        final Object representation = resource.get(null, new Request(Method.GET, uri), null, null);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputRepresentation.class.cast(representation).write(out);
+        return Stream.of(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n"))
+                     .filter(it -> it.contains("\"repository\":\"export\""))
+                     .collect(toList());
+    }
+
     private Document newDoc(final String artifact) {
         final Document document = new Document();
         document.add(ArtifactInfo.FLD_UINFO.toField("test|" + artifact + "|1.2.3|jar"));
@@ -15,34 +15,74 @@
  */
 package org.talend.nexus.customizations;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import javax.management.ObjectName;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.maven.index.ArtifactContext;
 import org.apache.maven.index.ArtifactInfo;
 import org.apache.maven.index.ArtifactInfoFilter;
+import org.apache.maven.index.DefaultIndexerEngine;
 import org.apache.maven.index.DefaultNexusIndexer;
 import org.apache.maven.index.DefaultQueryCreator;
 import org.apache.maven.index.IteratorSearchRequest;
 import org.apache.maven.index.IteratorSearchResponse;
 import org.apache.maven.index.SearchType;
+import org.apache.maven.index.artifact.Gav;
+import org.apache.maven.index.context.IndexingContext;
 import org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
 import org.codehaus.plexus.logging.console.ConsoleLogger;
 import org.eclipse.sisu.inject.DefaultBeanLocator;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.restlet.data.Method;
+import org.restlet.data.Request;
 import org.sonatype.nexus.configuration.application.runtime.DefaultApplicationRuntimeConfigurationBuilder;
 import org.sonatype.nexus.index.DefaultIndexerManager;
+import org.sonatype.nexus.index.GavSearcher;
+import org.sonatype.nexus.index.NexusIndexingContext;
+import org.sonatype.nexus.proxy.NoSuchRepositoryException;
 import org.sonatype.nexus.proxy.maven.MavenRepository;
 import org.sonatype.nexus.proxy.maven.gav.M2GavCalculator;
 import org.sonatype.nexus.proxy.maven.maven2.M2Repository;
@@ -50,10 +90,14 @@ import org.sonatype.nexus.proxy.maven.maven2.M2RepositoryConfigurator;
 import org.sonatype.nexus.proxy.maven.maven2.Maven2ContentClass;
 import org.sonatype.nexus.proxy.registry.DefaultRepositoryRegistry;
 import org.sonatype.nexus.proxy.registry.DefaultRepositoryTypeRegistry;
+import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
 import org.sonatype.nexus.proxy.repository.DefaultRepositoryKind;
+import org.sonatype.nexus.proxy.repository.GroupRepository;
 import org.sonatype.nexus.proxy.repository.LocalStatus;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.repository.RepositoryKind;
+import org.sonatype.nexus.rest.indexng.SearchNGIndexPlexusResource;
+import org.sonatype.nexus.rest.model.SearchNGResponse;
 import org.sonatype.sisu.goodies.eventbus.internal.DefaultEventBus;
 import org.sonatype.sisu.goodies.eventbus.internal.ReentrantGuavaEventBus;
 
@@ -63,7 +107,7 @@ class DefaultIndexerManagerAspectTest {
     @DisplayName("Ensure we call lucence and the search method is replaced")
     void searchArtifactIterator() throws Exception {
         final AtomicReference<IteratorSearchRequest> requestRef = new AtomicReference<>();
-        final DefaultIndexerManager manager = new DefaultIndexerManager() {
+        final DefaultIndexerManager manager = newManager(new DefaultIndexerManager() {
             @Override
             protected IteratorSearchRequest createRequest(final Query bq, final Integer from, final Integer count, final Integer hitLimit,
                                                           final boolean uniqueRGA, final List<ArtifactInfoFilter> extraFilters) {
@@ -72,7 +116,246 @@ class DefaultIndexerManagerAspectTest {
                 requestRef.set(request);
                 return request;
             }
+        });
+
+        final IteratorSearchResponse libraries = manager.searchArtifactIterator(
+                "org.talend.libraries", "foo1,foo2", "1.2.3", null, null, "libraries",
+                null, null, null, false, SearchType.EXACT, emptyList());
+        // exact clauses are planned as cached filters, no statistics here so the stock order is kept
+        assertEquals("+ConstantScore(CachingWrapperFilter(QueryWrapperFilter(g:org.talend.libraries))) " +
+                "+ConstantScore(CachingWrapperFilter(QueryWrapperFilter(a:foo1 a:foo2))) " +
+                "+ConstantScore(CachingWrapperFilter(QueryWrapperFilter(v:1.2.3)))", requestRef.get().getQuery().toString());
+        assertNotNull(libraries);
+    }
+
+    @Test
+    @DisplayName("Ensure identical concurrent searches share the same lucene query")
+    void singleFlight() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        final CountDownLatch searching = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final DefaultIndexerManager manager = newManager(new DefaultIndexerManager() {
+            @Override
+            protected IteratorSearchRequest createRequest(final Query bq, final Integer from, final Integer count, final Integer hitLimit,
+                                                          final boolean uniqueRGA, final List<ArtifactInfoFilter> extraFilters) {
+                requests.incrementAndGet();
+                searching.countDown();
+                try {
+                    assertTrue(release.await(1, MINUTES));
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.createRequest(bq, from, count, hitLimit, uniqueRGA, extraFilters);
+            }
+        });
+
+        final long coalesced = coalesced();
+        final ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            final Future<IteratorSearchResponse> first = threads.submit(() -> manager.searchArtifactIterator(
+                    "org.talend.singleflight", "foo2,foo1", null, null, null, "libraries",
+                    null, null, null, false, SearchType.EXACT, emptyList()));
+            assertTrue(searching.await(1, MINUTES));
+            final Future<IteratorSearchResponse> second = threads.submit(() -> manager.searchArtifactIterator(
+                    "org.talend.singleflight", "foo1,foo2", null, null, null, "libraries",
+                    null, null, null, false, SearchType.EXACT, emptyList()));
+            while (coalesced() == coalesced) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            final IteratorSearchResponse firstResponse = first.get(1, MINUTES);
+            final IteratorSearchResponse secondResponse = second.get(1, MINUTES);
+            assertEquals(1, requests.get());
+            assertNotSame(firstResponse.getResults(), secondResponse.getResults());
+            assertEquals(firstResponse.getTotalHitsCount(), secondResponse.getTotalHitsCount());
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Ensure identical concurrent SearchNG requests share the same lucene query despite their collectors")
+    void searchNGSingleFlight() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        final CountDownLatch searching = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final DefaultIndexerManager manager = newManager(new DefaultIndexerManager() {
+            @Override
+            protected IteratorSearchRequest createRequest(final Query bq, final Integer from, final Integer count, final Integer hitLimit,
+                                                          final boolean uniqueRGA, final List<ArtifactInfoFilter> extraFilters) {
+                if (requests.getAndIncrement() == 0) { // holds the first flight until the second request joined it
+                    searching.countDown();
+                    try {
+                        assertTrue(release.await(1, MINUTES));
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.createRequest(bq, from, count, hitLimit, uniqueRGA, extraFilters);
+            }
+        });
+        // the stock resource passes its system and repository wide latest version collectors as filters
+        final SearchNGIndexPlexusResource resource = new SearchNGIndexPlexusResource(singletonList(new GavSearcher(manager))) {
+            {
+                final DefaultEventBus bus = new DefaultEventBus(new ReentrantGuavaEventBus());
+                super.setDefaultRepositoryRegistry(new DefaultRepositoryRegistry(bus, new DefaultRepositoryTypeRegistry(
+                        new HashMap<>(), new DefaultApplicationRuntimeConfigurationBuilder(new DefaultBeanLocator()))));
+            }
         };
+        final String uri = "http://localhost/service/local/lucene/search?g=org.talend.searchng&a=foo1,foo2&repositoryId=libraries" +
+                "&collapseresults=false";
+
+        final long coalesced = coalesced();
+        final ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Object> first = threads.submit(() -> resource.get(null, new Request(Method.GET, uri), null, null));
+            assertTrue(searching.await(1, MINUTES));
+            final Future<Object> second = threads.submit(() -> resource.get(null, new Request(Method.GET, uri), null, null));
+            while (coalesced() == coalesced) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            assertTrue(SearchNGResponse.class.isInstance(first.get(1, MINUTES)));
+            assertTrue(SearchNGResponse.class.isInstance(second.get(1, MINUTES)));
+            assertEquals(1, requests.get());
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Ensure searches are aggregated per query shape")
+    void slowSearchFingerprints() throws Exception {
+        final DefaultIndexerManager manager = newManager(new DefaultIndexerManager());
+        for (final String artifactIds : asList("foo1,foo2", "bar1,bar2,bar3")) {
+            manager.searchArtifactIterator(
+                    "org.talend.fingerprint", artifactIds, "1.0", null, null, "libraries",
+                    null, null, null, false, SearchType.EXACT, emptyList());
+        }
+
+        final String[] top = String[].class.cast(ManagementFactory.getPlatformMBeanServer().getAttribute(
+                new ObjectName("org.talend.nexus.customizations:type=SlowSearches"), "TopFingerprints"));
+        final String expected = "g=? a=?x2-3 v=? p=- c=- repository=libraries type=exact calls=";
+        assertTrue(Stream.of(top).anyMatch(it -> it.startsWith(expected) && !it.startsWith(expected + "1 ")), () -> asList(top).toString());
+    }
+
+    @Test
+    @DisplayName("Ensure v=LATEST and v=RELEASE only resolve the versions of the searched repositories")
+    void latestVersions() throws Exception {
+        final AtomicReference<Query> query = new AtomicReference<>();
+        final DefaultIndexerManager manager = newManager(new DefaultIndexerManager() {
+            @Override
+            protected IteratorSearchRequest createRequest(final Query bq, final Integer from, final Integer count, final Integer hitLimit,
+                                                          final boolean uniqueRGA, final List<ArtifactInfoFilter> extraFilters) {
+                query.set(bq);
+                throw new Planned(); // the planned query is what is tested, not the nexus repositories
+            }
+        });
+        final Repository releases = newRepository(Repository.class, "latest-releases", true);
+        final Repository snapshots = newRepository(Repository.class, "latest-snapshots", true);
+        final Repository hidden = newRepository(Repository.class, "latest-hidden", false);
+        final Repository external = newRepository(Repository.class, "latest-private", true);
+        final Repository group = newRepository(GroupRepository.class, "latest-public", true, releases, snapshots, hidden);
+        set(manager, "repositoryRegistry", newRegistry(releases, snapshots, hidden, external, group));
+
+        final List<IndexingContext> contexts = asList(
+                newContext("latest-releases", "foo|1.0", "foo|2.0", "bar|1.0"),
+                newContext("latest-snapshots", "foo|3.0-SNAPSHOT"),
+                newContext("latest-hidden", "foo|4.0"),
+                newContext("latest-private", "foo|5.0", "bar|9.0", "baz|1.0"));
+        try {
+            assertEquals(new HashSet<>(asList("org.talend.latest|foo|2.0|NA|jar", "org.talend.latest|bar|1.0|NA|jar")),
+                    latest(manager, query, "RELEASE", "latest-public"));
+            assertEquals(new HashSet<>(asList("org.talend.latest|foo|3.0-SNAPSHOT|NA|jar", "org.talend.latest|bar|1.0|NA|jar")),
+                    latest(manager, query, "LATEST", "latest-public"));
+            assertEquals(new HashSet<>(asList("org.talend.latest|foo|2.0|NA|jar", "org.talend.latest|bar|1.0|NA|jar")),
+                    latest(manager, query, "LATEST", "latest-releases"));
+            assertEquals(singleton("org.talend.latest|foo|3.0-SNAPSHOT|NA|jar"), latest(manager, query, "LATEST", "latest-snapshots"));
+            assertEquals(new HashSet<>(asList(
+                    "org.talend.latest|foo|5.0|NA|jar", "org.talend.latest|bar|9.0|NA|jar", "org.talend.latest|baz|1.0|NA|jar")),
+                    latest(manager, query, "RELEASE", null));
+
+            // a repository the user can't read is only a fallback for the artifacts the other ones don't have
+            ThreadContext.bind(Subject.class.cast(Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
+                    new Class<?>[]{Subject.class}, (proxy, method, args) -> {
+                        if ("isPermitted".equals(method.getName()) && args.length == 1 && String.class.isInstance(args[0])) {
+                            return !"nexus:view:repository:latest-private".equals(args[0]);
+                        }
+                        throw new UnsupportedOperationException(method.toString());
+                    })));
+            try {
+                assertEquals(new HashSet<>(asList(
+                        "org.talend.latest|foo|3.0-SNAPSHOT|NA|jar", "org.talend.latest|bar|1.0|NA|jar", "org.talend.latest|baz|1.0|NA|jar")),
+                        latest(manager, query, "LATEST", null));
+            } finally {
+                ThreadContext.unbindSubject();
+            }
+        } finally {
+            for (final IndexingContext context : contexts) {
+                context.close(true);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Ensure v=LATEST follows the committed additions and removals without rebuilding the view")
+    void latestVersionsUpdates() throws Exception {
+        final AtomicReference<Query> query = new AtomicReference<>();
+        final DefaultIndexerManager manager = newManager(new DefaultIndexerManager() {
+            @Override
+            protected IteratorSearchRequest createRequest(final Query bq, final Integer from, final Integer count, final Integer hitLimit,
+                                                          final boolean uniqueRGA, final List<ArtifactInfoFilter> extraFilters) {
+                query.set(bq);
+                throw new Planned();
+            }
+        });
+        set(manager, "repositoryRegistry", newRegistry(newRepository(Repository.class, "latest-updates", true)));
+
+        final IndexingContext context = newContext("latest-updates", "foo|1.0", "bar|1.0");
+        final DefaultIndexerEngine engine = new DefaultIndexerEngine();
+        try {
+            final Set<String> initial = new HashSet<>(asList("org.talend.latest|foo|1.0|NA|jar", "org.talend.latest|bar|1.0|NA|jar"));
+            assertEquals(initial, latest(manager, query, "LATEST", "latest-updates"));
+            final long builds = gauge("LatestVersions", "builds");
+
+            engine.index(context, newArtifactContext("foo", "2.0"));
+            assertEquals(initial, latest(manager, query, "LATEST", "latest-updates")); // not committed yet
+            context.commit();
+            assertEquals(new HashSet<>(asList("org.talend.latest|foo|2.0|NA|jar", "org.talend.latest|bar|1.0|NA|jar")),
+                    latest(manager, query, "LATEST", "latest-updates"));
+
+            engine.remove(context, newArtifactContext("foo", "2.0"));
+            context.commit();
+            assertEquals(initial, latest(manager, query, "LATEST", "latest-updates"));
+            assertEquals(builds, gauge("LatestVersions", "builds"));
+        } finally {
+            context.close(true);
+        }
+    }
+
+    private static ArtifactContext newArtifactContext(final String artifactId, final String version) {
+        final ArtifactInfo info = new ArtifactInfo("latest-updates", "org.talend.latest", artifactId, version, null);
+        info.fextension = "jar";
+        return new ArtifactContext(null, null, null, info, new Gav("org.talend.latest", artifactId, version));
+    }
+
+    private static long gauge(final String group, final String name) {
+        final Metric gauge = Metrics.defaultRegistry().allMetrics().get(
+                new MetricName("org.talend.nexus.customizations", group, name));
+        return gauge == null ? 0 : Number.class.cast(Gauge.class.cast(gauge).value()).longValue();
+    }
+
+    private static long coalesced() {
+        final Metric gauge = Metrics.defaultRegistry().allMetrics().get(
+                new MetricName("org.talend.nexus.customizations", "Search", "singleflight.coalesced"));
+        return gauge == null ? 0 : Number.class.cast(Gauge.class.cast(gauge).value()).longValue();
+    }
+
+    private static DefaultIndexerManager newManager(final DefaultIndexerManager manager) throws Exception {
         final DefaultNexusIndexer indexer = new DefaultNexusIndexer();
         final DefaultQueryCreator queryCreator = new DefaultQueryCreator();
         final DefaultEventBus eventBus = new DefaultEventBus(new ReentrantGuavaEventBus());
@@ -129,12 +412,81 @@ class DefaultIndexerManagerAspectTest {
 
         // ensure MinimalArtifactInfoIndexCreator is loaded since it is the one enabling the indexer fields
         new MinimalArtifactInfoIndexCreator();
+        return manager;
+    }
 
-        final IteratorSearchResponse libraries = manager.searchArtifactIterator(
-                "org.talend.libraries", "foo1,foo2", "1.2.3", null, null, "libraries",
-                null, null, null, false, SearchType.EXACT, emptyList());
-        assertEquals("+g:org.talend.libraries +(a:foo1 a:foo2) +v:1.2.3", requestRef.get().getQuery().toString());
-        assertNotNull(libraries);
+    private static Set<String> latest(final DefaultIndexerManager manager, final AtomicReference<Query> query,
+                                      final String version, final String repositoryId) throws Exception {
+        query.set(null);
+        assertThrows(Planned.class, () -> manager.searchArtifactIterator(
+                "org.talend.latest", "foo,bar,baz", version, null, null, repositoryId,
+                null, null, null, false, SearchType.EXACT, emptyList()));
+        final Set<String> uinfos = new HashSet<>();
+        final Matcher matcher = Pattern.compile(ArtifactInfo.UINFO + ":([^ )]+)").matcher(query.get().toString());
+        while (matcher.find()) {
+            uinfos.add(matcher.group(1));
+        }
+        return uinfos;
+    }
+
+    private static IndexingContext newContext(final String repositoryId, final String... artifactVersions) throws IOException {
+        final IndexingContext context = new NexusIndexingContext(repositoryId, repositoryId, new File("target/" + repositoryId),
+                new RAMDirectory(), null, null, singletonList(new MinimalArtifactInfoIndexCreator()), false, false);
+        for (final String artifactVersion : artifactVersions) {
+            final Document document = new Document();
+            document.add(ArtifactInfo.FLD_UINFO.toField("org.talend.latest|" + artifactVersion + "|NA|jar"));
+            context.getIndexWriter().addDocument(document);
+        }
+        context.commit();
+        return context;
+    }
+
+    private static RepositoryRegistry newRegistry(final Repository... repositories) {
+        return RepositoryRegistry.class.cast(Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
+                new Class<?>[]{RepositoryRegistry.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getRepositories":
+                            return asList(repositories);
+                        case "getRepository":
+                            return Stream.of(repositories)
+                                    .filter(it -> it.getId().equals(args[0]))
+                                    .findFirst()
+                                    .orElseThrow(() -> new NoSuchRepositoryException(String.valueOf(args[0])));
+                        default:
+                            throw new UnsupportedOperationException(method.toString());
+                    }
+                }));
+    }
+
+    private static Repository newRepository(final Class<? extends Repository> type, final String id, final boolean searchable,
+                                            final Repository... members) {
+        return Repository.class.cast(Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
+                new Class<?>[]{type}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return id;
+                        case "isSearchable":
+                            return searchable;
+                        case "getRepositoryKind":
+                            return new DefaultRepositoryKind(type, emptyList());
+                        case "adaptToFacet":
+                            return proxy;
+                        case "getMemberRepositories":
+                        case "getTransitiveMemberRepositories":
+                            return asList(members);
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return id.hashCode();
+                        case "toString":
+                            return id;
+                        default:
+                            throw new UnsupportedOperationException(method.toString());
+                    }
+                }));
+    }
+
+    private static class Planned extends RuntimeException {
     }
 
     private static void set(final Object on, final String field, final Object value)
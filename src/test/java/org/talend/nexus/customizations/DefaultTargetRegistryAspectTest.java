@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations;
+
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.proxy.maven.maven2.Maven2ContentClass;
+import org.sonatype.nexus.proxy.registry.ContentClass;
+import org.sonatype.nexus.proxy.targets.Target;
+import org.talend.nexus.customizations.core.TargetIndex;
+import org.talend.nexus.customizations.core.TargetMatchingOptimizationAspect.FastTarget;
+import org.talend.nexus.customizations.core.TargetSnapshot;
+
+@DisplayName("Ensure the targets are read from an immutable snapshot swapped on change")
+class DefaultTargetRegistryAspectTest {
+    private final ContentClass contentClass = new Maven2ContentClass();
+    private final Object registry = new Object();
+
+    @Test
+    @DisplayName("Ensure the snapshot is reused until a change")
+    void swap() {
+        final TargetSnapshot snapshot = new TargetSnapshot(60000);
+        final AtomicReference<Collection<Target>> targets = new AtomicReference<>(targets(1, 3));
+        final TargetIndex first = snapshot.get(registry, targets::get);
+        assertEquals(3, first.size());
+
+        targets.set(targets(2, 5));
+        assertSame(first, snapshot.get(registry, targets::get)); // no change notified
+
+        snapshot.onEvent(new TargetRegistryEventUpdate());
+        final TargetIndex second = snapshot.get(registry, targets::get);
+        assertEquals(5, second.size());
+
+        snapshot.changed(registry, targets::get); // same targets, same index
+        assertSame(second, snapshot.get(registry, targets::get));
+    }
+
+    @Test
+    @DisplayName("Ensure readers always see a complete target list while targets are edited")
+    void concurrentEdits() throws InterruptedException {
+        final int targetCount = 200;
+        final TargetSnapshot snapshot = new TargetSnapshot(60000);
+        final AtomicReference<Collection<Target>> targets = new AtomicReference<>(targets(0, targetCount));
+        snapshot.get(registry, targets::get);
+
+        final int readers = 4;
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong reads = new AtomicLong();
+        final Queue<String> errors = new ConcurrentLinkedQueue<>();
+        final CountDownLatch done = new CountDownLatch(readers);
+        final ExecutorService pool = Executors.newFixedThreadPool(readers);
+        try {
+            for (int i = 0; i < readers; i++) {
+                pool.execute(() -> {
+                    try {
+                        while (running.get()) {
+                            final Set<Target> matching = snapshot.get(registry, targets::get)
+                                    .getTargetsForContentClassPath(contentClass, "/org/talend/foo/1.0/foo-1.0.jar");
+                            reads.incrementAndGet();
+                            if (matching.size() != targetCount) {
+                                errors.add("partial target list: " + matching.size());
+                            } else if (matching.stream().map(it -> it.getId().substring(0, it.getId().indexOf('-'))).distinct().count() != 1) {
+                                errors.add("mixed target lists");
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            for (int version = 1; version < 200; version++) { // admin edits under load
+                targets.set(targets(version, targetCount));
+                snapshot.changed(registry, targets::get);
+            }
+            running.set(false);
+            assertTrue(done.await(30, SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+        assertTrue(errors.isEmpty(), () -> String.valueOf(errors.peek()));
+        assertTrue(reads.get() > 0);
+        assertEquals(targetCount, snapshot.get(registry, targets::get).size());
+    }
+
+    private List<Target> targets(final int version, final int count) {
+        final List<Target> targets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            targets.add(new FastTarget(version + "-" + i, "t" + i, contentClass, singletonList(".*/org/talend/.*")));
+        }
+        return targets;
+    }
+
+    // events are matched by simple name to not depend on all the nexus modules
+    private static class TargetRegistryEventUpdate {
+    }
+}
@@ -57,6 +57,7 @@ class JettyThreadPoolMonitoringAspectTest {
                 });
             }
             assertEquals(1, doCaptureGauge(registry, metricName));
+            assertEquals(1, doCaptureGauge(registry, new MetricName(QueuedThreadPool.class, "jobs-max", null)));
         } finally {
             latch.countDown();
             pool.stop();
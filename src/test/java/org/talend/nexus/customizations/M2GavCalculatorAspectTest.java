@@ -15,12 +15,20 @@
  */
 package org.talend.nexus.customizations;
 
+import static java.util.Arrays.asList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.sonatype.nexus.proxy.maven.gav.Gav;
 import org.sonatype.nexus.proxy.maven.gav.M2GavCalculator;
+import org.talend.nexus.customizations.core.GavPathParser;
+import org.talend.nexus.customizations.core.M2GavCalculatorAspect;
 
 @DisplayName("Ensure the gav does not use regex but still works as expected")
 class M2GavCalculatorAspectTest {
@@ -31,4 +39,120 @@ class M2GavCalculatorAspectTest {
                 new Gav("org.talend.libraries", "foo-bar", "1.2.3", null, "jar", null, null, null, false, null, false, null));
         assertEquals("/org/talend/libraries/foo-bar/1.2.3/foo-bar-1.2.3.jar", path);
     }
+
+    @Test
+    @DisplayName("Ensure the path of hot artifacts is cached")
+    void cache() {
+        final M2GavCalculator calculator = new M2GavCalculator();
+        final String first = calculator.gavToPath(
+                new Gav("org.talend.libraries", "cached", "1.2.3", "sources", "jar", null, null, null, true, Gav.HashType.sha1, false, null));
+        final String second = calculator.gavToPath(
+                new Gav("org.talend.libraries", "cached", "1.2.3", "sources", "jar", null, null, null, true, Gav.HashType.sha1, false, null));
+        assertEquals("/org/talend/libraries/cached/1.2.3/cached-1.2.3-sources.jar.sha1", first);
+        assertSame(first, second);
+        assertEquals("/org/talend/libraries/cached/1.2.3/cached-1.2.3-sources.jar", calculator.gavToPath(
+                new Gav("org.talend.libraries", "cached", "1.2.3", "sources", "jar", null, null, null, false, null, false, null)));
+    }
+
+    @Test
+    @DisplayName("Ensure the buffer based gavToPath handles all the artifact name parts")
+    void gavToPath() {
+        final M2GavCalculator calculator = new M2GavCalculator();
+        assertEquals("/org/talend/buffer/foo/1.0-SNAPSHOT/foo-1.0-SNAPSHOT.pom", calculator.gavToPath(
+                new Gav("org.talend.buffer", "foo", "1.0-SNAPSHOT", null, "pom", null, null, null, false, null, false, null)));
+        assertEquals("/org/talend/buffer/foo/1.0/foo-1.0", calculator.gavToPath(
+                new Gav("org.talend.buffer", "foo", "1.0", "  ", null, null, null, null, false, null, false, null)));
+        assertEquals("/org/talend/buffer/foo/1.0/foo-1.0-linux.tar.gz.asc.md5", calculator.gavToPath(
+                new Gav("org.talend.buffer", "foo", "1.0", "linux", "tar.gz", null, null, null, true, Gav.HashType.md5, true, Gav.SignatureType.gpg)));
+        assertEquals("/org/talend/buffer/foo/1.0/custom.jar", calculator.gavToPath(
+                new Gav("org.talend.buffer", "foo", "1.0", "sources", "jar", null, null, "custom.jar", false, null, false, null)));
+        assertEquals("/.hidden/buffer/foo/1.0/foo-1.0.jar", calculator.gavToPath(
+                new Gav(".hidden.buffer", "foo", "1.0", null, "jar", null, null, null, false, null, false, null)));
+        assertEquals("foo-1.0-sources.jar.sha1", calculator.calculateArtifactName(
+                new Gav("org.talend.buffer", "foo", "1.0", "sources", "jar", null, null, null, true, Gav.HashType.sha1, false, null)));
+
+        final StringBuilder longArtifact = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longArtifact.append("long");
+        }
+        assertEquals("/org/talend/buffer/" + longArtifact + "/1.0/" + longArtifact + "-1.0.jar", calculator.gavToPath(
+                new Gav("org.talend.buffer", longArtifact.toString(), "1.0", null, "jar", null, null, null, false, null, false, null)));
+    }
+
+    @Test
+    @DisplayName("Ensure the fast pathToGav gives the same gav than nexus one")
+    void pathToGav() {
+        final M2GavCalculator calculator = new M2GavCalculator();
+        final List<String> paths = corpus();
+        final List<String> expected = new ArrayList<>(paths.size());
+        M2GavCalculatorAspect.FAST_PATH_TO_GAV = false;
+        try {
+            for (final String path : paths) {
+                expected.add(describe(calculator.pathToGav(path)));
+            }
+        } finally {
+            M2GavCalculatorAspect.FAST_PATH_TO_GAV = true;
+        }
+
+        int fastPaths = 0;
+        for (int i = 0; i < paths.size(); i++) {
+            final String path = paths.get(i);
+            if (GavPathParser.parse(path) != GavPathParser.UNSUPPORTED) {
+                fastPaths++;
+            }
+            assertEquals(expected.get(i), describe(calculator.pathToGav(path)), path);
+        }
+        assertTrue(fastPaths > paths.size() / 2, "only " + fastPaths + "/" + paths.size() + " paths used the fast parser");
+    }
+
+    @Test
+    @DisplayName("Ensure timestamped snapshots are delegated to nexus")
+    void timestampedSnapshot() {
+        final String path = "/org/talend/foo/1.0-SNAPSHOT/foo-1.0-20190304.101112-3-sources.jar";
+        assertSame(GavPathParser.UNSUPPORTED, GavPathParser.parse(path));
+        final Gav gav = new M2GavCalculator().pathToGav(path);
+        assertEquals("sources", gav.getClassifier());
+        assertEquals(3, gav.getSnapshotBuildNumber().intValue());
+    }
+
+    private static List<String> corpus() {
+        final List<String> paths = new ArrayList<>(asList(
+                "", "/", "foo", "/foo", "/foo/bar", "/foo/bar/dummy", "/org/foo/maven-metadata.xml",
+                "/org/talend/foo/maven-metadata.xml", "/org/talend/foo/maven-metadata.xml.sha1",
+                "/org/talend/foo/1.0/maven-metadata.xml", "/org/talend/foo/1.0-SNAPSHOT/maven-metadata.xml.md5",
+                "/org/talend/foo/1.0/", "/org/talend/foo/1.0/foo", "/org/talend/foo/1.0/foo-1.0",
+                "/org/talend/foo/1.0/foo-1.0.", "/org/talend/foo/1.0/foo-1.0-.jar", "/org/talend/foo/1.0/bar-1.0.jar",
+                "/org/talend/foo/1.0/foo-1.1.jar", "/org/talend/foo/1.0/foo-1.0_x.jar", "/org/talend/foo/1.0/foo-1.0.jar.sha256",
+                "/org//foo/1.0/foo-1.0.jar", "//foo/1.0/foo-1.0.jar", "org/talend/foo/1.0/foo-1.0.jar",
+                "/org/talend/foo/SNAPSHOT/foo-SNAPSHOT.jar", "/org/talend/foo/1.0SNAPSHOT/foo-1.0SNAPSHOT.jar",
+                "/org/talend/foo/1.0-SNAPSHOT/foo-1.0-20190304.101112-3.jar",
+                "/org/talend/foo/1.0-SNAPSHOT/foo-1.0-20190304.101112-3.pom.sha1",
+                "/.hidden/foo/1.0/foo-1.0.jar"));
+        for (final String group : asList("org/talend/libraries", "org/talend/components", "com/acme", "io")) {
+            for (final String artifact : asList("foo", "foo-bar", "foo.bar", "talend-mysql-5.1")) {
+                for (final String version : asList("1", "1.2.3", "7.1.1-M2", "6.0.0-SNAPSHOT", "1.0.0.v20190101")) {
+                    for (final String classifier : asList("", "-sources", "-javadoc", "-tests", "-linux-x86_64")) {
+                        for (final String extension : asList(".jar", ".pom", ".zip", ".tar.gz", ".car")) {
+                            for (final String suffix : asList("", ".md5", ".sha1", ".asc", ".asc.md5", ".asc.sha1")) {
+                                paths.add("/" + group + "/" + artifact + "/" + version + "/" + artifact + "-" + version
+                                        + classifier + extension + suffix);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return paths;
+    }
+
+    private static String describe(final Gav gav) {
+        if (gav == null) {
+            return "null";
+        }
+        return String.join("|", asList(gav.getGroupId(), gav.getArtifactId(), gav.getVersion(), gav.getBaseVersion(),
+                gav.getClassifier(), gav.getExtension(), String.valueOf(gav.getSnapshotBuildNumber()),
+                String.valueOf(gav.getSnapshotTimeStamp()), gav.getName(), String.valueOf(gav.isSnapshot()),
+                String.valueOf(gav.isHash()), String.valueOf(gav.getHashType()),
+                String.valueOf(gav.isSignature()), String.valueOf(gav.getSignatureType())));
+    }
 }
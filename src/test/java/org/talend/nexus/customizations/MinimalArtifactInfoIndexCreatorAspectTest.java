@@ -15,20 +15,44 @@
  */
 package org.talend.nexus.customizations;
 
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.RAMDirectory;
 import org.apache.maven.index.ArtifactContext;
 import org.apache.maven.index.ArtifactInfo;
 import org.apache.maven.index.IndexerField;
 import org.apache.maven.index.artifact.Gav;
+import org.apache.maven.index.context.IndexingContext;
 import org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator;
+import org.apache.maven.index.updater.IndexDataReader;
+import org.apache.maven.index.updater.IndexDataWriter;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.index.NexusIndexingContext;
+import org.talend.nexus.customizations.indexing.LatestVersions;
+import org.talend.nexus.customizations.indexing.LicenseDictionary;
 
 @DisplayName("Ensure we add license/licenseUrl/url in the indexed fields")
 class MinimalArtifactInfoIndexCreatorAspectTest {
@@ -81,6 +105,109 @@ class MinimalArtifactInfoIndexCreatorAspectTest {
         assertEquals("http://fake", doc.get("url"));
     }
 
+    @Test
+    @DisplayName("Ensure licenses are stored once in the dictionary and resolved to shared instances")
+    void licenseDictionary() throws Exception {
+        final LicenseDictionary dictionary = new LicenseDictionary();
+        final Set<String> persisted = new HashSet<>();
+        final List<Document> entries = new ArrayList<>();
+        final List<Document> stored = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final Document document = new Document();
+            document.add(new Field("license", new String("Apache License, Version 2.0"), Field.Store.YES, Field.Index.ANALYZED));
+            document.add(new Field("licenseUrl", "https://www.apache.org/licenses/LICENSE-2.0", Field.Store.YES, Field.Index.ANALYZED));
+            dictionary.encode(document, persisted, entries::add);
+
+            final Fieldable license = document.getFieldable("license");
+            assertTrue(license.isIndexed()); // still searchable
+            assertFalse(license.isStored());
+            stored.add(storedFields(document));
+        }
+        assertEquals(2, entries.size());
+        assertTrue(entries.stream().allMatch(dictionary::isDictionaryEntry));
+
+        final String license = dictionary.decode(stored.get(0), "license");
+        assertEquals("Apache License, Version 2.0", license);
+        assertSame(license, dictionary.decode(stored.get(2), "license"));
+        assertEquals("https://www.apache.org/licenses/LICENSE-2.0", dictionary.decode(stored.get(1), "licenseUrl"));
+        assertNull(dictionary.decode(new Document(), "license"));
+
+        final Document published = stored.get(0);
+        dictionary.toText(published);
+        assertEquals("Apache License, Version 2.0", published.get("license"));
+        assertNull(published.get("licenseRef"));
+    }
+
+    @Test
+    @DisplayName("Ensure a published index has the license text and no dictionary document")
+    void publishedLicenses() throws Exception {
+        final IndexingContext context = new NexusIndexingContext("published", "published", new File("target/published"),
+                new RAMDirectory(), null, null, singletonList(new MinimalArtifactInfoIndexCreator()), false, false);
+        try {
+            final Document document = new Document();
+            document.add(ArtifactInfo.FLD_UINFO.toField("test|published|1.0|NA|jar"));
+            document.add(new Field("license", "Published License", Field.Store.YES, Field.Index.ANALYZED));
+            document.add(new Field("licenseUrl", "http://published", Field.Store.YES, Field.Index.ANALYZED));
+            new LicenseDictionary().encode(context, document); // what the indexing does with the dictionary enabled
+            assertNotNull(document.get("licenseRef"));
+            context.getIndexWriter().addDocument(document);
+            context.commit();
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final IndexSearcher searcher = context.acquireIndexSearcher();
+            try {
+                new IndexDataWriter(out).write(context, searcher.getIndexReader(), null);
+            } finally {
+                context.releaseIndexSearcher(searcher);
+            }
+
+            final IndexDataReader reader = new IndexDataReader(new ByteArrayInputStream(out.toByteArray()));
+            reader.readHeader();
+            final List<Document> published = new ArrayList<>();
+            for (Document read = reader.readDocument(); read != null; read = reader.readDocument()) {
+                published.add(read);
+            }
+            final Document artifact = published.stream()
+                    .filter(it -> "test|published|1.0|NA|jar".equals(it.get(ArtifactInfo.UINFO)))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("artifact not published: " + published));
+            assertEquals("Published License", artifact.get("license"));
+            assertEquals("http://published", artifact.get("licenseUrl"));
+            assertNull(artifact.get("licenseRef"));
+            assertNull(artifact.get("licenseUrlRef"));
+            assertTrue(published.stream().noneMatch(it -> it.get("talendDictionaryId") != null), published::toString);
+        } finally {
+            context.close(true);
+        }
+    }
+
+    // what a reader returns for a document
+    private Document storedFields(final Document document) {
+        final Document stored = new Document();
+        document.getFields().stream().filter(Fieldable::isStored).forEach(stored::add);
+        return stored;
+    }
+
+    @Test
+    @DisplayName("Ensure the latest release and snapshot of each artifact are tracked")
+    void latestVersions() {
+        final LatestVersions.View view = new LatestVersions.View();
+        Stream.of("org.talend|foo|1.9.0|NA|jar", "org.talend|foo|1.10.0|NA|jar", "org.talend|foo|1.10.0|sources|jar",
+                "org.talend|foo|1.11.0-20190101.120000-2|NA|jar", "org.talend|foo|1.11.0-20190101.120000-10|NA|jar",
+                "org.talend|foo|1.10.1-rc1|NA|jar", "org.talend|bar|2.0.0-SNAPSHOT|NA|pom")
+              .forEach(view::add);
+        assertEquals(singleton("org.talend|foo|1.10.1-rc1|NA|jar"), new HashSet<>(view.uinfos("org.talend:foo", false)));
+        assertEquals(singleton("org.talend|foo|1.11.0-20190101.120000-10|NA|jar"), new HashSet<>(view.uinfos("org.talend:foo", true)));
+        assertTrue(view.uinfos("org.talend:bar", false).isEmpty());
+        assertEquals(singleton("org.talend|bar|2.0.0-SNAPSHOT|NA|pom"), new HashSet<>(view.uinfos("org.talend:bar", true)));
+        assertTrue(view.uinfos("org.talend:missing", true).isEmpty());
+
+        assertTrue(LatestVersions.compareVersions("1.0-rc1", "1.0") < 0);
+        assertTrue(LatestVersions.compareVersions("1.0-SNAPSHOT", "1.0-20190101.120000-1") < 0);
+        assertTrue(LatestVersions.compareVersions("1.0.1", "1.0-sp1") > 0);
+        assertEquals(0, LatestVersions.compareVersions("1.0", "1.0.0"));
+    }
+
     private ArtifactContext getArtifactContext() {
         final Gav gav = new Gav("org.test", "test-art", "1.0.0-SNAPSHOT");
         return new ArtifactContext(new File("src/test/resources/fakepom.xml"), null, null,
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.sonatype.sisu.goodies.eventbus.internal.DefaultEventBus;
+import org.sonatype.sisu.goodies.eventbus.internal.ReentrantGuavaEventBus;
+import org.talend.nexus.customizations.core.AuthorizationCache;
+import org.talend.nexus.customizations.core.NexusItemAuthorizerAspect;
+
+@DisplayName("Ensure path authorization decisions are cached per user and invalidated")
+class NexusItemAuthorizerAspectTest {
+    @Test
+    @DisplayName("Ensure decisions are reused per user, repository, path and action")
+    void cache() {
+        final AuthorizationCache cache = new AuthorizationCache(100, 60000);
+        final AtomicInteger decisions = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(cache.authorize("user", "releases", "/org/talend/foo/1.0/foo-1.0.jar", "read", () -> {
+                decisions.incrementAndGet();
+                return true;
+            }));
+        }
+        assertEquals(1, decisions.get());
+        assertFalse(cache.authorize("other", "releases", "/org/talend/foo/1.0/foo-1.0.jar", "read", () -> {
+            decisions.incrementAndGet();
+            return false;
+        }));
+        assertEquals(2, decisions.get());
+    }
+
+    @Test
+    @DisplayName("Ensure target, security and repository events invalidate the decisions")
+    void invalidation() {
+        final AuthorizationCache cache = new AuthorizationCache(100, 60000);
+        final AtomicInteger decisions = new AtomicInteger();
+        cache.authorize("user", "releases", "/foo", "read", () -> decisions.incrementAndGet() > 0);
+        cache.onEvent("not an invalidating event");
+        cache.authorize("user", "releases", "/foo", "read", () -> decisions.incrementAndGet() > 0);
+        assertEquals(1, decisions.get());
+
+        cache.onEvent(new TargetRegistryEventAdd());
+        cache.authorize("user", "releases", "/foo", "read", () -> decisions.incrementAndGet() > 0);
+        assertEquals(2, decisions.get());
+    }
+
+    @Test
+    @DisplayName("Ensure a zero TTL disables the cache")
+    void disabled() {
+        final AuthorizationCache cache = new AuthorizationCache(100, 0);
+        final AtomicInteger decisions = new AtomicInteger();
+        cache.authorize("user", "releases", "/foo", "read", () -> decisions.incrementAndGet() > 0);
+        cache.authorize("user", "releases", "/foo", "read", () -> decisions.incrementAndGet() > 0);
+        assertEquals(2, decisions.get());
+    }
+
+    @Test
+    @DisplayName("Ensure a privilege or role change posted on the nexus event bus invalidates the decisions")
+    void eventBusInvalidation() {
+        final AuthorizationCache cache = NexusItemAuthorizerAspect.DECISIONS;
+        final DefaultEventBus bus = new DefaultEventBus(new ReentrantGuavaEventBus());
+        final AtomicInteger decisions = new AtomicInteger();
+        for (final Object event : new Object[] { new AuthorizationConfigurationChanged(), new UserPrincipalsExpired() }) {
+            cache.invalidate();
+            decisions.set(0);
+            cache.authorize("user", "releases", "/bus", "read", () -> decisions.incrementAndGet() > 0);
+            bus.post("not an invalidating event");
+            cache.authorize("user", "releases", "/bus", "read", () -> decisions.incrementAndGet() > 0);
+            assertEquals(1, decisions.get());
+
+            bus.post(event);
+            cache.authorize("user", "releases", "/bus", "read", () -> decisions.incrementAndGet() > 0);
+            assertEquals(2, decisions.get(), event.getClass().getSimpleName());
+        }
+    }
+
+    // events are matched by simple name to not depend on all the nexus modules
+    private static class TargetRegistryEventAdd {
+    }
+
+    private static class AuthorizationConfigurationChanged { // privileges and roles
+    }
+
+    private static class UserPrincipalsExpired { // role mappings of a user
+    }
+}
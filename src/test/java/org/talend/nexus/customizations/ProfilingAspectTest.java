@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.proxy.maven.gav.Gav;
+import org.sonatype.nexus.proxy.maven.gav.M2GavCalculator;
+import org.talend.nexus.customizations.monitoring.LatencyHistogram;
+import org.talend.nexus.customizations.monitoring.Profiler;
+
+@DisplayName("Ensure the customization advices can be profiled")
+class ProfilingAspectTest {
+    @Test
+    @DisplayName("Ensure advice executions are counted and timed when enabled")
+    void profile() {
+        final Profiler profiler = Profiler.get();
+        profiler.reset();
+        profiler.setSamplingRate(1);
+        profiler.setEnabled(true);
+        try {
+            final M2GavCalculator calculator = new M2GavCalculator();
+            for (int i = 0; i < 10; i++) {
+                calculator.gavToPath(
+                        new Gav("org.talend.libraries", "foo-bar", "1.2.3", null, "jar", null, null, null, false, null, false, null));
+            }
+            final String report = profiler.report();
+            assertTrue(report.contains("M2GavCalculatorAspect.gavToPath: count=10, samples=10"), report);
+        } finally {
+            profiler.setEnabled(false);
+            profiler.setSamplingRate(8);
+            profiler.reset();
+        }
+    }
+
+    @Test
+    @DisplayName("Ensure recorders of terminated threads are folded without losing their samples")
+    void deadThreadsAreFolded() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 50; i++) {
+            final Thread thread = new Thread(() -> {
+                final LatencyHistogram.Recorder recorder = histogram.recorder();
+                recorder.count(1);
+                recorder.record(100);
+            });
+            thread.start();
+            thread.join();
+        }
+        assertEquals(0, histogram.getRecorderCount());
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(50, snapshot.getCalls());
+        assertEquals(50, snapshot.getSamples());
+        assertTrue(snapshot.percentile(.5) <= 100 && snapshot.percentile(.5) > 80, Long.toString(snapshot.percentile(.5)));
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCalls());
+    }
+}
@@ -15,7 +15,9 @@
  */
 package org.talend.nexus.customizations;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -23,7 +25,10 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.sonatype.nexus.proxy.maven.maven2.Maven2ContentClass;
 import org.sonatype.nexus.proxy.targets.Target;
+import org.talend.nexus.customizations.core.PreparedPath;
 import org.talend.nexus.customizations.core.TargetMatchingOptimizationAspect;
+import org.talend.nexus.customizations.core.TargetMatchingOptimizationAspect.FastTarget;
+import org.talend.nexus.customizations.core.TargetShadowVerifier;
 
 @DisplayName("Target uses regexes and we have too much rules to use that at runtime")
 class TargetMatchingOptimizationAspectTest {
@@ -36,4 +41,36 @@ class TargetMatchingOptimizationAspectTest {
         assertTrue(target.isPathContained(contentClass, "/org/talend/foo/bar"));
         assertFalse(target.isPathContained(contentClass, "/org/talend/dummy/bar"));
     }
+
+    @Test
+    @DisplayName("All the patterns of a target are evaluated")
+    void multiplePatterns() {
+        final Maven2ContentClass contentClass = new Maven2ContentClass();
+        final Target target = new Target("id", "name", contentClass,
+                asList(".*/org/talend/foo/.*", ".*maven-metadata\\.xml.*", ".*\\.pom", "/com/acme/.*"));
+        assertTrue(target.isPathContained(contentClass, "/org/talend/foo/bar"));
+        assertTrue(target.isPathContained(contentClass, "/org/other/maven-metadata.xml"));
+        assertTrue(target.isPathContained(contentClass, "/org/other/lib/1.0/lib-1.0.pom"));
+        assertTrue(target.isPathContained(contentClass, "/com/acme/lib/1.0/lib-1.0.jar"));
+        assertFalse(target.isPathContained(contentClass, "/org/other/lib/1.0/lib-1.0.jar"));
+        assertFalse(target.isPathContained(contentClass, "/org/other/lib.pom/1.0/lib-1.0"));
+    }
+
+    @Test
+    @DisplayName("Ensure the shadow mode detects fast paths diverging from the stock regexes")
+    void shadow() {
+        final TargetShadowVerifier verifier = new TargetShadowVerifier(1, Runnable::run);
+        final FastTarget target = new FastTarget("id", "name", new Maven2ContentClass(), singletonList(".*/org/talend/foo/.*"));
+        for (final String path : asList("/org/talend/foo/bar", "/org/talend/dummy/bar")) {
+            final PreparedPath prepared = new PreparedPath(path);
+            verifier.sample(target, prepared, target.isPathMatched(prepared));
+        }
+        assertEquals(2, verifier.getChecks());
+        assertEquals(0, verifier.getMismatches());
+
+        // the prefix shortcut assumes the talend groups are at the root of the repository
+        final PreparedPath nested = new PreparedPath("/mirror/org/talend/foo/bar");
+        verifier.sample(target, nested, target.isPathMatched(nested));
+        assertEquals(1, verifier.getMismatches());
+    }
 }
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.talend.nexus.customizations.monitoring.WeavingReport;
+
+@DisplayName("Ensure the weaving done by the agent is reported")
+class WeavingReportTest {
+    @Test
+    @DisplayName("Ensure classes loaded after the installation are counted per classloader")
+    void report() throws Exception {
+        WeavingReport.install();
+        Class.forName(WeavingReportTest.class.getName() + "$LoadedAfterInstall");
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("org.talend.nexus.customizations:type=WeavingReport");
+        final long inspected = Long.class.cast(server.getAttribute(name, "InspectedClasses"));
+        assertTrue(inspected > 0, "no class inspected");
+        final String report = String.class.cast(server.invoke(name, "report", new Object[0], new String[0]));
+        assertTrue(report.startsWith("Weaving: inspected="), report);
+        assertTrue(report.contains("AppClassLoader"), report);
+    }
+
+    @Test
+    @DisplayName("Ensure the agent transformer is not replaced, only its preprocessor is observed")
+    void transformerKept() throws Exception {
+        final Class<?> agent = Class.forName("org.aspectj.weaver.loadtime.Agent");
+        final Field transformer = agent.getDeclaredField("s_transformer");
+        transformer.setAccessible(true);
+        final Object before = transformer.get(null);
+
+        WeavingReport.install();
+
+        assertSame(before, transformer.get(null));
+        final Field preProcessor = Class.forName("org.aspectj.weaver.loadtime.ClassPreProcessorAgentAdapter")
+                .getDeclaredField("classPreProcessor");
+        preProcessor.setAccessible(true);
+        assertTrue(Proxy.isProxyClass(preProcessor.get(null).getClass()));
+    }
+
+    public static class LoadedAfterInstall {
+    }
+}
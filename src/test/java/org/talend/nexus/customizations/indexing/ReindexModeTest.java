@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.maven.index.ArtifactContext;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.ArtifactScanningListener;
+import org.apache.maven.index.DefaultScanner;
+import org.apache.maven.index.ScanningRequest;
+import org.apache.maven.index.ScanningResult;
+import org.apache.maven.index.context.IndexingContext;
+import org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.index.NexusIndexingContext;
+
+// package-private api, the test lives next to it like the org.apache.maven.index ones
+@DisplayName("Ensure the reindex mode only changes full reindex scans")
+class ReindexModeTest {
+    @Test
+    @DisplayName("Ensure a full reindex uses the bigger buffer, restores it and commits a merged index through the context")
+    void fullReindex() throws Exception {
+        final IndexingContext context = newContext("reindex-full");
+        try {
+            final IndexWriter writer = context.getIndexWriter();
+            final double buffer = writer.getRAMBufferSizeMB();
+            final long generation = DefaultIndexingContextAspect.generation();
+
+            final double scanBuffer = ReindexMode.scan(context, () -> {
+                for (int i = 0; i < 3; i++) { // a segment per commit
+                    writer.addDocument(newDoc("artifact" + i));
+                    writer.commit();
+                }
+                return writer.getRAMBufferSizeMB();
+            });
+
+            assertEquals(Math.max(buffer, ReindexMode.RAM_BUFFER_MB), scanBuffer);
+            assertEquals(buffer, writer.getRAMBufferSizeMB());
+            assertEquals(ReindexMode.MAX_SEGMENTS, ReindexMode.segments(context.getIndexDirectory()));
+            assertTrue(DefaultIndexingContextAspect.generation() > generation, "context.commit() not called");
+        } finally {
+            context.close(true);
+        }
+    }
+
+    @Test
+    @DisplayName("Ensure an incremental scan of a context with artifacts is not changed")
+    void incrementalScan() throws Exception {
+        final IndexingContext context = newContext("reindex-incremental");
+        try {
+            final IndexWriter writer = context.getIndexWriter();
+            writer.addDocument(newDoc("existing"));
+            context.commit();
+            final double buffer = writer.getRAMBufferSizeMB();
+
+            final double scanBuffer = ReindexMode.scan(context, () -> {
+                writer.addDocument(newDoc("added"));
+                writer.commit();
+                return writer.getRAMBufferSizeMB();
+            });
+
+            assertEquals(buffer, scanBuffer);
+            assertTrue(ReindexMode.segments(context.getIndexDirectory()) > 1);
+        } finally {
+            context.close(true);
+        }
+    }
+
+    @Test
+    @DisplayName("Ensure DefaultScanner scans are unchanged by default")
+    void optIn() throws Exception {
+        assertFalse(ReindexMode.ENABLED, "the reindex mode must be opt-in");
+        final IndexingContext context = newContext("reindex-scanner");
+        try {
+            context.getRepository().mkdirs();
+            final IndexWriter writer = context.getIndexWriter();
+            final double buffer = writer.getRAMBufferSizeMB();
+            final AtomicReference<Double> scanBuffer = new AtomicReference<>();
+            new DefaultScanner().scan(new ScanningRequest(context, new ArtifactScanningListener() {
+                @Override
+                public void scanningStarted(final IndexingContext ctx) {
+                    scanBuffer.set(writer.getRAMBufferSizeMB());
+                }
+
+                @Override
+                public void scanningFinished(final IndexingContext ctx, final ScanningResult result) {
+                    // no-op
+                }
+
+                @Override
+                public void artifactError(final ArtifactContext ac, final Exception e) {
+                    // no-op
+                }
+
+                @Override
+                public void artifactDiscovered(final ArtifactContext ac) {
+                    // no-op
+                }
+            }));
+            assertEquals(buffer, scanBuffer.get());
+        } finally {
+            context.close(true);
+        }
+    }
+
+    private static IndexingContext newContext(final String id) throws IOException {
+        return new NexusIndexingContext(id, id, new File("target/" + id), new RAMDirectory(), null, null,
+                singletonList(new MinimalArtifactInfoIndexCreator()), false, false);
+    }
+
+    private static Document newDoc(final String artifact) {
+        final Document document = new Document();
+        document.add(ArtifactInfo.FLD_UINFO.toField("test|" + artifact + "|1.0|jar"));
+        document.add(MinimalArtifactInfoIndexCreator.FLD_GROUP_ID.toField("test"));
+        document.add(MinimalArtifactInfoIndexCreator.FLD_ARTIFACT_ID.toField(artifact));
+        document.add(MinimalArtifactInfoIndexCreator.FLD_VERSION.toField("1.0"));
+        return document;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Tag;
+import org.restlet.resource.Representation;
+
+// package-private api, the resource level behavior is in SearchNGIndexPlexusResourceAspectTest
+@DisplayName("Ensure SearchNG entity tags identify a query result")
+class SearchETagsTest {
+    @Test
+    @DisplayName("Ensure the parameter order and the artifactIds order or duplicates don't change the tag")
+    void normalization() {
+        final String tag = SearchETags.tag(new Form("g=test&a=b,a"), MediaType.APPLICATION_JSON);
+        assertEquals(tag, SearchETags.tag(new Form("a=a,b,a&g=test"), MediaType.APPLICATION_JSON));
+        assertNotEquals(tag, SearchETags.tag(new Form("g=test&a=a,c"), MediaType.APPLICATION_JSON));
+        assertNotEquals(tag, SearchETags.tag(new Form("g=test&a=b,a"), MediaType.APPLICATION_XML));
+    }
+
+    @Test
+    @DisplayName("Ensure If-None-Match matches the tag or *")
+    void matches() {
+        final String tag = SearchETags.tag(new Form("g=test"), null);
+        assertTrue(SearchETags.matches(tag, singletonList(new Tag(tag, false))));
+        assertTrue(SearchETags.matches(tag, asList(new Tag("other", false), new Tag(tag, false))));
+        assertTrue(SearchETags.matches(tag, singletonList(Tag.ALL)));
+        assertFalse(SearchETags.matches(tag, singletonList(new Tag("other", false))));
+        assertFalse(SearchETags.matches(tag, emptyList()));
+        assertFalse(SearchETags.matches(tag, null));
+    }
+
+    @Test
+    @DisplayName("Ensure the 304 entity is empty and carries the tag")
+    void notModifiedEntity() {
+        final Representation entity = SearchETags.notModifiedEntity("tag", MediaType.APPLICATION_JSON);
+        assertEquals("tag", entity.getTag().getName());
+        assertEquals(0, entity.getSize());
+        assertEquals(MediaType.APPLICATION_JSON, entity.getMediaType());
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.mgt.DefaultSecurityManager;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.subject.support.DelegatingSubject;
+import org.apache.shiro.util.ThreadContext;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.ResourceException;
+
+// package-private api, the test lives next to it like the org.apache.maven.index ones
+@DisplayName("Ensure SearchNG searches run on a bounded executor")
+class SearchExecutorTest {
+    @Test
+    @DisplayName("Ensure the search runs with the subject, classloader, response and cursor of the caller")
+    void propagation() throws Throwable {
+        final SearchExecutor executor = new SearchExecutor(1, 1, 10000);
+        final Subject subject = new DelegatingSubject(new DefaultSecurityManager());
+        final Response response = new Response(new Request());
+        final ClassLoader loader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        final SearchCursor cursor = SearchCursor.decode("");
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader oldLoader = thread.getContextClassLoader();
+        ThreadContext.bind(subject);
+        Response.setCurrent(response);
+        SearchCursor.set(cursor);
+        thread.setContextClassLoader(loader);
+        try {
+            final Object[] seen = Object[].class.cast(executor.submit(() -> new Object[] {
+                    Thread.currentThread(), SecurityUtils.getSubject(), Response.getCurrent(),
+                    Thread.currentThread().getContextClassLoader(), SearchCursor.current() }));
+            assertFalse(thread == seen[0], "not run on the caller thread");
+            assertSame(subject, seen[1]);
+            assertSame(response, seen[2]);
+            assertSame(loader, seen[3]);
+            assertSame(cursor, seen[4]);
+        } finally {
+            thread.setContextClassLoader(oldLoader);
+            SearchCursor.clear();
+            Response.setCurrent(null);
+            ThreadContext.unbindSubject();
+        }
+    }
+
+    @Test
+    @DisplayName("Ensure searches are rejected when the threads and the queue are full")
+    void rejection() throws Exception {
+        final SearchExecutor executor = new SearchExecutor(1, 1, 10000);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CompletableFuture<Object> running = CompletableFuture.supplyAsync(() -> submit(executor, () -> {
+            started.countDown();
+            release.await();
+            return "running";
+        }));
+        assertTrue(started.await(1, TimeUnit.MINUTES));
+        final CompletableFuture<Object> queued = CompletableFuture.supplyAsync(() -> submit(executor, () -> "queued"));
+        final long end = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while (executor.getQueued() == 0 && System.nanoTime() < end) {
+            Thread.sleep(10);
+        }
+
+        final ResourceException rejected = assertThrows(ResourceException.class, () -> executor.submit(() -> "rejected"));
+        assertEquals(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, rejected.getStatus());
+        assertEquals(1, executor.getRejected());
+
+        release.countDown();
+        assertEquals("running", running.get(1, TimeUnit.MINUTES));
+        assertEquals("queued", queued.get(1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    @DisplayName("Ensure timed out searches free the queue but keep their thread until they end")
+    void timeout() throws Exception {
+        final SearchExecutor executor = new SearchExecutor(1, 1, 200);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final ResourceException running = assertThrows(ResourceException.class, () -> executor.submit(() -> {
+            started.countDown();
+            release.await();
+            return "late";
+        }));
+        assertEquals(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, running.getStatus());
+        assertTrue(started.await(1, TimeUnit.MINUTES));
+        assertEquals(1, executor.getAbandoned());
+
+        final AtomicBoolean ran = new AtomicBoolean();
+        assertThrows(ResourceException.class, () -> executor.submit(() -> {
+            ran.set(true);
+            return "queued";
+        }));
+        assertEquals(0, executor.getQueued());
+        assertEquals(2, executor.getTimeouts());
+
+        release.countDown();
+        final long end = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while (executor.getAbandoned() > 0 && System.nanoTime() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getAbandoned());
+        assertFalse(ran.get(), "a search removed from the queue must not run");
+    }
+
+    private static Object submit(final SearchExecutor executor, final Callable<Object> search) {
+        try {
+            return executor.submit(search);
+        } catch (final Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
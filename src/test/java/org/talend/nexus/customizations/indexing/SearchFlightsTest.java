@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.ArtifactInfoFilter;
+import org.apache.maven.index.IteratorResultSet;
+import org.apache.maven.index.IteratorSearchResponse;
+import org.apache.maven.index.SearchType;
+import org.apache.maven.index.context.IndexingContext;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+// package-private api, the test lives next to it like the org.apache.maven.index ones
+@DisplayName("Ensure identical concurrent searches are coalesced")
+class SearchFlightsTest {
+    @Test
+    @DisplayName("Ensure a coalesced search replays the shared hits through its own filters")
+    void replayFilters() throws Exception {
+        final SearchFlights flights = new SearchFlights();
+        final List<ArtifactInfo> hits = asList(
+                new ArtifactInfo("flights", "test", "foo", "1.0", null),
+                new ArtifactInfo("flights", "test", "bar", "1.0", null));
+        final Collector leader = new Collector();
+        final Collector follower = new Collector();
+        final AtomicInteger searches = new AtomicInteger();
+        final CountDownLatch searching = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final long coalesced = coalesced();
+        final ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Object> first = threads.submit(() -> flights.execute("test", "foo,bar", null, null, null, "flights",
+                    null, null, null, false, SearchType.EXACT, singletonList(leader), () -> {
+                        searches.incrementAndGet();
+                        searching.countDown();
+                        try {
+                            assertTrue(release.await(1, MINUTES));
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        for (final ArtifactInfo hit : hits) { // what the result set of the leader does
+                            leader.accepts(null, hit);
+                        }
+                        return new IteratorSearchResponse(null, hits.size(), new ReplayIteratorResultSet(hits, null, hits.size(), null));
+                    }));
+            assertTrue(searching.await(1, MINUTES));
+            final Future<Object> second = threads.submit(() -> flights.execute("test", "bar,foo", null, null, null, "flights",
+                    null, null, null, false, SearchType.EXACT, singletonList(follower), () -> {
+                        searches.incrementAndGet();
+                        throw new IllegalStateException("should be coalesced");
+                    }));
+            while (coalesced() == coalesced) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            assertEquals(asList("foo", "bar"), artifactIds(first.get(1, MINUTES)));
+            assertEquals(asList("foo", "bar"), artifactIds(second.get(1, MINUTES)));
+            assertEquals(1, searches.get());
+            assertEquals(asList("foo", "bar"), leader.seen);
+            assertEquals(asList("foo", "bar"), follower.seen);
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+
+    private static List<String> artifactIds(final Object response) {
+        final List<String> artifactIds = new ArrayList<>();
+        final IteratorResultSet results = IteratorSearchResponse.class.cast(response).getResults();
+        while (results.hasNext()) {
+            artifactIds.add(results.next().artifactId);
+        }
+        return artifactIds;
+    }
+
+    private static long coalesced() {
+        final Metric gauge = Metrics.defaultRegistry().allMetrics().get(
+                new MetricName("org.talend.nexus.customizations", "Search", "singleflight.coalesced"));
+        return gauge == null ? 0 : Number.class.cast(Gauge.class.cast(gauge).value()).longValue();
+    }
+
+    // like the SearchNG latest version collectors: no state before the search, accepts everything
+    public static class Collector implements ArtifactInfoFilter {
+        private final List<String> seen = new ArrayList<>();
+
+        @Override
+        public boolean accepts(final IndexingContext context, final ArtifactInfo info) {
+            seen.add(info.artifactId);
+            return true;
+        }
+    }
+}
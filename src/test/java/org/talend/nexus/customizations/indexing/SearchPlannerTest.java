@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.context.IndexingContext;
+import org.apache.maven.index.creator.MinimalArtifactInfoIndexCreator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.index.NexusIndexingContext;
+
+// package-private api, the test lives next to it like the org.apache.maven.index ones
+@DisplayName("Ensure the search planner keeps the results of the stock query")
+class SearchPlannerTest {
+    @Test
+    @DisplayName("Ensure only exact searches get constant score clauses")
+    void exactOnly() {
+        final Query artifactIds = new BooleanQuery();
+        BooleanQuery.class.cast(artifactIds).add(new TermQuery(new Term("artifactId", "foo")), BooleanClause.Occur.SHOULD);
+        BooleanQuery.class.cast(artifactIds).add(new TermQuery(new Term("artifactId", "bar")), BooleanClause.Occur.SHOULD);
+        final SearchPlanner planner = new SearchPlanner();
+
+        final StringBuilder exact = new StringBuilder();
+        planner.plan(asList(new SearchPlanner.Clause("g", new TermQuery(new Term("groupId", "test"))),
+                new SearchPlanner.Clause("a", artifactIds)), true, exact);
+        assertTrue(exact.toString().matches("g:filter\\(df=\\d+\\) a:constant\\(df=\\d+\\)"), exact.toString());
+
+        final StringBuilder scored = new StringBuilder();
+        final BooleanQuery query = planner.plan(asList(new SearchPlanner.Clause("g", new TermQuery(new Term("groupId", "test"))),
+                new SearchPlanner.Clause("a", artifactIds)), false, scored);
+        assertTrue(scored.toString().matches("g:score\\(df=\\d+\\) a:score\\(df=\\d+\\)"), scored.toString());
+        for (final BooleanClause clause : query.getClauses()) {
+            assertTrue(TermQuery.class.isInstance(clause.getQuery()) || clause.getQuery() == artifactIds, clause.toString());
+        }
+    }
+
+    @Test
+    @DisplayName("Ensure only the repeating single term clauses are cached")
+    void cachedClauses() {
+        final SearchPlanner planner = new SearchPlanner();
+        final TermQuery group = new TermQuery(new Term("groupId", "cached"));
+        planner.plan(asList(new SearchPlanner.Clause("g", group),
+                new SearchPlanner.Clause("a", new TermQuery(new Term("artifactId", "foo")))), true, new StringBuilder());
+
+        final long filters = gauge("planner.filters");
+        final long hits = gauge("planner.filterHits");
+        final long misses = gauge("planner.filterMisses");
+        planner.plan(asList(new SearchPlanner.Clause("g", group),
+                new SearchPlanner.Clause("a", new TermQuery(new Term("artifactId", "bar")))), true, new StringBuilder());
+        assertEquals(filters, gauge("planner.filters")); // bar is not cached
+        assertEquals(hits + 1, gauge("planner.filterHits"));
+        assertEquals(misses, gauge("planner.filterMisses"));
+    }
+
+    @Test
+    @DisplayName("Ensure a cached filter does not match a document deleted then added again (reindexed artifact)")
+    void deletedDocuments() throws IOException {
+        final IndexingContext context = new NexusIndexingContext("planner", "planner", new File("target/planner"), new RAMDirectory(),
+                null, null, singletonList(new MinimalArtifactInfoIndexCreator()), false, false);
+        try {
+            context.getIndexWriter().addDocument(newDoc("foo"));
+            context.getIndexWriter().addDocument(newDoc("bar"));
+            context.commit();
+
+            final BooleanQuery query = new SearchPlanner().plan(singletonList(
+                    new SearchPlanner.Clause("g", new TermQuery(new Term("groupId", "test")))), true, new StringBuilder());
+            final IndexReader reader = IndexReader.open(context.getIndexDirectory());
+            assertEquals(2, new IndexSearcher(reader).search(query, 10).totalHits); // caches the segment bitset
+
+            context.getIndexWriter().deleteDocuments(new Term(ArtifactInfo.UINFO, "test|foo|1.0|NA|jar"));
+            context.getIndexWriter().addDocument(newDoc("foo"));
+            context.commit();
+
+            // the unchanged segment is shared with the previous reader, only its deletions changed
+            final IndexReader reopened = IndexReader.openIfChanged(reader);
+            assertNotNull(reopened);
+            reader.close();
+            try {
+                assertEquals(2, new IndexSearcher(reopened).search(query, 10).totalHits);
+            } finally {
+                reopened.close();
+            }
+        } finally {
+            context.close(true);
+        }
+    }
+
+    private static long gauge(final String name) {
+        final Metric gauge = Metrics.defaultRegistry().allMetrics().get(
+                new MetricName("org.talend.nexus.customizations", "Search", name));
+        return gauge == null ? 0 : Number.class.cast(Gauge.class.cast(gauge).value()).longValue();
+    }
+
+    private static Document newDoc(final String artifact) {
+        final Document document = new Document();
+        document.add(ArtifactInfo.FLD_UINFO.toField("test|" + artifact + "|1.0|NA|jar"));
+        document.add(MinimalArtifactInfoIndexCreator.FLD_GROUP_ID.toField("test"));
+        document.add(MinimalArtifactInfoIndexCreator.FLD_ARTIFACT_ID.toField(artifact));
+        document.add(MinimalArtifactInfoIndexCreator.FLD_VERSION.toField("1.0"));
+        return document;
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2006-2019 Talend Inc. - www.talend.com
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.talend.nexus.customizations.indexing;
+
+import static java.util.Collections.emptyList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.restlet.Context;
+import org.restlet.data.Method;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.ResourceException;
+import org.restlet.resource.Variant;
+import org.sonatype.nexus.rest.indexng.SearchNGIndexPlexusResource;
+import org.sonatype.nexus.rest.model.SearchNGResponse;
+
+// package-private api, the test lives next to it like the org.apache.maven.index ones
+@DisplayName("Ensure SearchNG searches wait for the warm-up")
+class SearchWarmupTest {
+    @Test
+    @DisplayName("Ensure the warm-up queries are parsed and decoded")
+    void parse() {
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("g", "org.talend");
+        expected.put("a", "foo,bar");
+        expected.put("v", "1.0 beta");
+        expected.put("searchType", "EXACT");
+        assertEquals(expected, SearchWarmup.parse("g=org.talend&a=foo%2Cbar&v=1.0+beta&searchType=EXACT&ignored&=empty"));
+    }
+
+    @Test
+    @DisplayName("Ensure the gate is open when the warm-up is disabled or done")
+    void gate() {
+        assertTrue(new SearchWarmup.Gate(false, 60000).isReady());
+
+        final SearchWarmup.Gate gate = new SearchWarmup.Gate(true, 60000);
+        assertFalse(gate.isReady());
+        gate.done();
+        assertTrue(gate.isReady());
+    }
+
+    @Test
+    @DisplayName("Ensure the gate opens at the timeout even if the warm-up never starts")
+    void timeout() throws InterruptedException {
+        final SearchWarmup.Gate gate = new SearchWarmup.Gate(true, 50);
+        assertFalse(gate.isReady());
+        Thread.sleep(100);
+        assertTrue(gate.isReady());
+    }
+
+    @Test
+    @DisplayName("Ensure SearchNG requests get a 503 without searching until the warm-up is done")
+    void serviceUnavailable() {
+        final SearchWarmup.Gate gate = new SearchWarmup.Gate(true, 60000);
+        final SearchWarmup.Gate previous = SearchWarmup.gate(gate);
+        try {
+            final AtomicInteger searches = new AtomicInteger();
+            final SearchNGIndexPlexusResource resource = new SearchNGIndexPlexusResource(emptyList()) {
+                @Override
+                public SearchNGResponse get(final Context context, final Request request,
+                                            final Response response, final Variant variant) {
+                    searches.incrementAndGet();
+                    return new SearchNGResponse();
+                }
+            };
+
+            final Request request = new Request(Method.GET, "http://localhost/service/local/lucene/search?g=warmup");
+            final ResourceException error = assertThrows(ResourceException.class, () -> resource.get(null, request, new Response(request), null));
+            assertEquals(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, error.getStatus());
+            assertEquals(0, searches.get());
+
+            gate.done();
+            final Request ready = new Request(Method.GET, "http://localhost/service/local/lucene/search?g=warmup");
+            assertTrue(SearchNGResponse.class.isInstance(resource.get(null, ready, new Response(ready), null)));
+            assertEquals(1, searches.get());
+        } finally {
+            SearchWarmup.gate(previous);
+        }
+    }
+}